@@ -0,0 +1,98 @@
+package art.emu.benchmarks;
+
+import art.emu.ConditionBits;
+import art.emu.ConditionFlags;
+import art.emu.LazyConditionFlags;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flag updates for every operand pair of one operation, eager and lazy. The update benchmarks never look at the
+ * flags, the update and test ones read the zero flag after every update like a conditional jump would
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConditionFlagsBenchmark {
+    private static final int OPERANDS = 256;
+
+    @Param({ "eager", "lazy" })
+    public String mode;
+
+    private ConditionFlags flags;
+
+    @Setup
+    public void setUp () {
+        flags = "lazy".equals(mode) ? new LazyConditionFlags() : new ConditionFlags();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS * OPERANDS)
+    public int addition () {
+        for (int a = 0; a < OPERANDS; a++) {
+            for (int b = 0; b < OPERANDS; b++) {
+                flags.setFromAddition(a, b);
+            }
+        }
+        return flags.getBits();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS * OPERANDS)
+    public int subtraction () {
+        for (int a = 0; a < OPERANDS; a++) {
+            for (int b = 0; b < OPERANDS; b++) {
+                flags.setFromSubtraction(a, b);
+            }
+        }
+        return flags.getBits();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS)
+    public int logic () {
+        for (int result = 0; result < OPERANDS; result++) {
+            flags.setFromLogic(result);
+        }
+        return flags.getBits();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS)
+    public int increment () {
+        for (int value = 0; value < OPERANDS; value++) {
+            flags.setFromIncrement(value);
+        }
+        return flags.getBits();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS * OPERANDS)
+    public int subtractionAndTest () {
+        int zeros = 0;
+        for (int a = 0; a < OPERANDS; a++) {
+            for (int b = 0; b < OPERANDS; b++) {
+                flags.setFromSubtraction(a, b);
+                if (flags.isFlagSet(ConditionBits.ZERO)) {
+                    zeros++;
+                }
+            }
+        }
+        return zeros;
+    }
+}
@@ -0,0 +1,51 @@
+package art.emu.benchmarks;
+
+import art.emu.MemoryBus;
+import art.emu.invaders.VramConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Video RAM to pixel conversion of {@link art.emu.invaders.SpaceInvadersDisplay#draw}, straight into the buffer a
+ * full texture upload reads, without the upload and drawing that need a GL context
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DisplayBenchmark {
+    private MemoryBus memory;
+    private IntBuffer pixels;
+    private VramConverter converter;
+
+    @Setup
+    public void setUp () throws IOException {
+        memory = Machines.warmedUp(null).getProcessor().getMemory();
+        pixels = ByteBuffer.allocateDirect(VramConverter.SCREEN_WIDTH * VramConverter.SCREEN_HEIGHT * 4)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+        converter = new VramConverter(pixels.order());
+    }
+
+    @Benchmark
+    public IntBuffer convert () {
+        pixels.clear();
+        converter.convert(memory, pixels);
+        return pixels;
+    }
+}
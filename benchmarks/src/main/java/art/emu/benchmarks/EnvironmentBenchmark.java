@@ -0,0 +1,57 @@
+package art.emu.benchmarks;
+
+import art.emu.invaders.InvadersEnvironment;
+import art.emu.invaders.RomImage;
+import art.emu.jit.JitCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steps of {@link InvadersEnvironment} with random actions, resetting whenever a game is over, and the same steps
+ * with the grayscale picture drawn after every one. Run with -prof gc to see that steps don't allocate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EnvironmentBenchmark {
+    @Param({ "1", "4" })
+    public int frameSkip;
+
+    @Param({ "true", "false" })
+    public boolean jit;
+
+    private InvadersEnvironment environment;
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    @Setup
+    public void setUp () throws IOException {
+        environment = new InvadersEnvironment(RomImage.of(Machines.romFiles()), jit ? new JitCompiler() : null);
+    }
+
+    @Benchmark
+    public InvadersEnvironment.Step step () {
+        InvadersEnvironment.Step step = environment.step(random.nextInt(InvadersEnvironment.ACTION_COUNT), frameSkip);
+        return step.isDone() ? environment.reset() : step;
+    }
+
+    @Benchmark
+    public byte[] stepAndGrayscale () {
+        return step().getGrayscale();
+    }
+}
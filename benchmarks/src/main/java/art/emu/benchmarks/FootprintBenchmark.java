@@ -0,0 +1,67 @@
+package art.emu.benchmarks;
+
+import art.emu.invaders.RomImage;
+import art.emu.invaders.SpaceInvadersMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap a machine takes, for running thousands of them. Run with the GC profiler,
+ * {@code -Pjmh="FootprintBenchmark -prof gc"}: gc.alloc.rate.norm is the bytes allocated per machine, including the
+ * blocks it decodes in its first frames. A machine on a shared {@link RomImage} only allocates its RAM, one with a
+ * ROM of its own copies the 8K of ROM files in as well
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FootprintBenchmark {
+    @Param({ "true", "false" })
+    public boolean sharedRom;
+
+    /**
+     * Frames run after creating the machine, 0 for an empty one
+     */
+    @Param({ "0", "120" })
+    public int frames;
+
+    private byte[][] files;
+    private RomImage rom;
+
+    @Setup
+    public void setUp () throws IOException {
+        files = Machines.romFiles();
+        rom = RomImage.of(files);
+    }
+
+    @Benchmark
+    public SpaceInvadersMachine machine () {
+        SpaceInvadersMachine machine;
+        if (sharedRom) {
+            machine = new SpaceInvadersMachine(rom, null);
+        } else {
+            machine = new SpaceInvadersMachine(null);
+            for (int i = 0; i < files.length; i++) {
+                machine.loadRom(i, files[i]);
+            }
+        }
+        for (int frame = 0; frame < frames; frame++) {
+            machine.runFrame();
+        }
+        return machine;
+    }
+}
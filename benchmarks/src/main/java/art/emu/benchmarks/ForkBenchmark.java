@@ -0,0 +1,58 @@
+package art.emu.benchmarks;
+
+import art.emu.invaders.SpaceInvadersMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Branching off a running machine: a bare {@link SpaceInvadersMachine#fork()}, a fork that plays a frame, and the
+ * same frame played by loading a saved state into a machine that is kept around, what search had to do before forks
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ForkBenchmark {
+    private SpaceInvadersMachine root;
+    private SpaceInvadersMachine reused;
+    private byte[] state;
+
+    @Setup
+    public void setUp () throws IOException {
+        root = Machines.warmedUp(null);
+        reused = Machines.warmedUp(null);
+        state = root.saveState();
+    }
+
+    @Benchmark
+    public SpaceInvadersMachine fork () {
+        return root.fork();
+    }
+
+    @Benchmark
+    public SpaceInvadersMachine forkAndFrame () {
+        SpaceInvadersMachine fork = root.fork();
+        fork.runFrame();
+        return fork;
+    }
+
+    @Benchmark
+    public SpaceInvadersMachine loadStateAndFrame () {
+        reused.loadState(state);
+        reused.runFrame();
+        return reused;
+    }
+}
@@ -0,0 +1,50 @@
+package art.emu.benchmarks;
+
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.jit.JitCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole frames on the real ROM in attract mode, the same two half frames and interrupts as the game loop.
+ * One frame is {@link SpaceInvadersMachine#CYCLES_PER_FRAME} cycles, so 1 frame per ms is about 33 emulated MHz.
+ * With idleSkipping false every pass of the game's wait loops is run, interpreted or compiled
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+    @Param({ "true", "false" })
+    public boolean jit;
+
+    @Param({ "true", "false" })
+    public boolean idleSkipping;
+
+    private SpaceInvadersMachine machine;
+
+    @Setup
+    public void setUp () throws IOException {
+        machine = Machines.warmedUp(jit ? new JitCompiler() : null);
+        machine.getBlockCache().setIdleSkipping(idleSkipping);
+    }
+
+    @Benchmark
+    public int frame () {
+        return machine.runFrame();
+    }
+}
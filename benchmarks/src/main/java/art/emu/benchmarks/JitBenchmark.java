@@ -0,0 +1,50 @@
+package art.emu.benchmarks;
+
+import art.emu.invaders.RomImage;
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.jit.JitCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the compiled blocks take to pay off: attract mode from power on in batches of {@link #BATCH_FRAMES}
+ * frames without any warm-up, every iteration is the next batch of the same machine. The interpreter is at full speed
+ * after a batch or two, the JIT is behind until HotSpot has compiled the generated classes in turn.
+ * {@link FrameBenchmark} has the speed of both once warm
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 20, batchSize = JitBenchmark.BATCH_FRAMES)
+@Fork(1)
+@State(Scope.Thread)
+public class JitBenchmark {
+    static final int BATCH_FRAMES = 10000;
+
+    @Param({ "true", "false" })
+    public boolean jit;
+
+    private SpaceInvadersMachine machine;
+
+    @Setup
+    public void setUp () throws IOException {
+        machine = new SpaceInvadersMachine(RomImage.of(Machines.romFiles()), jit ? new JitCompiler() : null);
+    }
+
+    @Benchmark
+    public int frame () {
+        return machine.runFrame();
+    }
+}
@@ -0,0 +1,46 @@
+package art.emu.benchmarks;
+
+import art.emu.BlockCompiler;
+import art.emu.invaders.SpaceInvadersMachine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+final class Machines {
+    // set -Dinvaders.roms=... when not running from the project directory
+    private static final Path ROM_DIRECTORY = Paths.get(System.getProperty("invaders.roms", "assets/invaders"));
+
+    // attract mode has drawn the playfield and aliens by then
+    static final int WARM_UP_FRAMES = 600;
+
+    private Machines () {
+    }
+
+    /**
+     * @return machine with the real ROMs loaded that already ran {@link #WARM_UP_FRAMES}
+     */
+    static SpaceInvadersMachine warmedUp (BlockCompiler compiler) throws IOException {
+        SpaceInvadersMachine machine = new SpaceInvadersMachine(compiler);
+        byte[][] files = romFiles();
+        for (int i = 0; i < files.length; i++) {
+            machine.loadRom(i, files[i]);
+        }
+        for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+            machine.runFrame();
+        }
+        return machine;
+    }
+
+    /**
+     * @return contents of {@link SpaceInvadersMachine#ROM_FILES}
+     */
+    static byte[][] romFiles () throws IOException {
+        byte[][] files = new byte[SpaceInvadersMachine.ROM_FILES.length][];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = Files.readAllBytes(ROM_DIRECTORY.resolve(SpaceInvadersMachine.ROM_FILES[i]));
+        }
+        return files;
+    }
+}
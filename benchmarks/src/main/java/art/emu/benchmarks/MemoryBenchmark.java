@@ -0,0 +1,158 @@
+package art.emu.benchmarks;
+
+import art.emu.MemoryBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MemoryBus} reads and writes with the Space Invaders layout, on the fast path and with a pass-through
+ * handler on every page, against the masked flat memory the bus replaced and a bare array as the floor.
+ * The fast path should be no slower than the masked memory
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryBenchmark {
+    private static final int ROM_SIZE = 0x2000, RAM_SIZE = 0x2000;
+    private static final int ACCESSES = 4096;
+
+    /**
+     * The flat memory from before the bus: ROM, RAM and mirrors resolved with masks on every access
+     */
+    private static final class MaskedMemory {
+        private final byte[] memoryBytes = new byte[ROM_SIZE + RAM_SIZE + 1];
+        private final int romSize = ROM_SIZE;
+        private final int ramMask = RAM_SIZE - 1;
+        private final int romWriteSink = ROM_SIZE + RAM_SIZE;
+        private final boolean[] codePages = new boolean[(memoryBytes.length + 0xFF) >> 8];
+
+        int read (int address) {
+            address &= 0xFFFF;
+            int offset = address - romSize;
+            int ram = ~(offset >> 31);
+            return memoryBytes[(address & ~ram) | ((romSize + (offset & ramMask)) & ram)] & 0xFF;
+        }
+
+        void write (int address, int value) {
+            address &= 0xFFFF;
+            int offset = address - romSize;
+            int ram = ~(offset >> 31);
+            int physical = ((romSize + (offset & ramMask)) & ram) | (romWriteSink & ~ram);
+            memoryBytes[physical] = (byte) value;
+            if (codePages[physical >> 8]) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static final MemoryBus.PageHandler PASS_THROUGH = new MemoryBus.PageHandler() {
+        @Override
+        public int read (MemoryBus bus, int address) {
+            return bus.readMapped(address);
+        }
+
+        @Override
+        public void write (MemoryBus bus, int address, int value) {
+            bus.writeMapped(address, value);
+        }
+    };
+
+    @Param({ "false", "true" })
+    public boolean handlers;
+
+    private final int[] addresses = new int[ACCESSES];
+    private MemoryBus bus;
+    private MaskedMemory masked;
+    private byte[] array;
+
+    @Setup
+    public void setUp () {
+        // mostly ROM and RAM like the game, a few mirror accesses
+        Random random = new Random(8080);
+        for (int i = 0; i < ACCESSES; i++) {
+            addresses[i] = random.nextInt(16) == 0 ? random.nextInt(MemoryBus.MAX_MEMORY) : random.nextInt(0x4000);
+        }
+
+        bus = new MemoryBus(ROM_SIZE, RAM_SIZE);
+        if (handlers) {
+            for (int page = 0; page < MemoryBus.PAGE_COUNT; page++) {
+                bus.setPageHandler(page, PASS_THROUGH);
+            }
+        }
+        masked = new MaskedMemory();
+        array = new byte[MemoryBus.MAX_MEMORY];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int busRead () {
+        int sum = 0;
+        for (int address : addresses) {
+            sum += bus.readMemory(address);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public MemoryBus busWrite () {
+        for (int address : addresses) {
+            bus.writeMemory(address, address);
+        }
+        return bus;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int maskedRead () {
+        int sum = 0;
+        for (int address : addresses) {
+            sum += masked.read(address);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public MaskedMemory maskedWrite () {
+        for (int address : addresses) {
+            masked.write(address, address);
+        }
+        return masked;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int arrayRead () {
+        int sum = 0;
+        for (int address : addresses) {
+            sum += array[address] & 0xFF;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public byte[] arrayWrite () {
+        for (int address : addresses) {
+            array[address] = (byte) address;
+        }
+        return array;
+    }
+}
@@ -0,0 +1,136 @@
+package art.emu.benchmarks;
+
+import art.emu.ConditionBits;
+import art.emu.ConditionFlags;
+import art.emu.LazyConditionFlags;
+import art.emu.Processor;
+import art.emu.Registers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single instructions through {@link Processor#step()}, fetch, operand decode and dispatch included.
+ * Every benchmark runs a short program of {@link #PROGRAM_LENGTH} instructions of one kind and rewinds the program
+ * counter, scores are per instruction
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OpcodeBenchmark {
+    private static final int PROGRAM_LENGTH = 8;
+
+    private static final int ALU = 0x0000;
+    private static final int MOV = 0x0100;
+    private static final int JUMP = 0x0200;
+    private static final int CALL = 0x0300;
+    private static final int SUBROUTINE = 0x0380;
+    private static final int PUSH_POP = 0x0400;
+    private static final int STACK_TOP = 0x8000;
+    private static final int DATA = 0x4000;
+
+    @Param({ "eager", "lazy" })
+    public String flags;
+
+    private Processor processor;
+
+    @Setup
+    public void setUp () {
+        processor = new Processor("lazy".equals(flags) ? new LazyConditionFlags() : new ConditionFlags());
+        byte[] memory = processor.getMemory().getMemoryBytes();
+
+        // ADD B, SUB C, ANA D, XRA E, ORA H, CMP L, ADC B, SBB C
+        put(memory, ALU, 0x80, 0x91, 0xA2, 0xAB, 0xB4, 0xBD, 0x88, 0x99);
+        // MOV B,C  MOV C,D  MOV D,E  MOV E,A  MOV A,B  MOV M,A  MOV A,M  MOV C,M
+        put(memory, MOV, 0x41, 0x4A, 0x53, 0x5F, 0x78, 0x77, 0x7E, 0x4E);
+        // JNZ to the next JNZ, taken or not the program counter ends up at the same place
+        for (int i = 0; i < PROGRAM_LENGTH; i++) {
+            int next = JUMP + (i + 1) * 3;
+            put(memory, JUMP + i * 3, 0xC2, next & 0xFF, next >> 8);
+        }
+        // four CALLs of a subroutine that only returns
+        for (int i = 0; i < PROGRAM_LENGTH / 2; i++) {
+            put(memory, CALL + i * 3, 0xCD, SUBROUTINE & 0xFF, SUBROUTINE >> 8);
+        }
+        put(memory, SUBROUTINE, 0xC9);
+        // PUSH B, PUSH D, PUSH H, PUSH PSW, POP PSW, POP H, POP D, POP B
+        put(memory, PUSH_POP, 0xC5, 0xD5, 0xE5, 0xF5, 0xF1, 0xE1, 0xD1, 0xC1);
+
+        processor.writeRegisterValue(Registers.B, (byte) 0x12);
+        processor.writeRegisterValue(Registers.C, (byte) 0x34);
+        processor.writeRegisterValue(Registers.D, (byte) 0x56);
+        processor.writeRegisterValue(Registers.E, (byte) 0x78);
+        processor.writeRegisterValue(Registers.H, (byte) (DATA >> 8));
+        processor.writeRegisterValue(Registers.L, (byte) DATA);
+        processor.writeRegisterValue(Registers.ACCUMULATOR, (byte) 0x9A);
+        processor.setStackPointer(STACK_TOP);
+    }
+
+    private static void put (byte[] memory, int address, int... bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            memory[address + i] = (byte) bytes[i];
+        }
+    }
+
+    private int run (int start, int steps) {
+        processor.setProgramCounter(start);
+        int cycles = 0;
+        for (int i = 0; i < steps; i++) {
+            cycles += processor.step();
+        }
+        return cycles;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAM_LENGTH)
+    public int alu () {
+        return run(ALU, PROGRAM_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAM_LENGTH)
+    public int mov () {
+        // keep HL on the data byte, the MOVs never write H or L
+        return run(MOV, PROGRAM_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAM_LENGTH)
+    public int jumpTaken () {
+        processor.setConditionBit(ConditionBits.ZERO, false);
+        return run(JUMP, PROGRAM_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAM_LENGTH)
+    public int jumpNotTaken () {
+        processor.setConditionBit(ConditionBits.ZERO, true);
+        return run(JUMP, PROGRAM_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAM_LENGTH)
+    public int callReturn () {
+        return run(CALL, PROGRAM_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAM_LENGTH)
+    public int pushPop () {
+        return run(PUSH_POP, PROGRAM_LENGTH);
+    }
+}
@@ -0,0 +1,56 @@
+package art.emu.benchmarks;
+
+import art.emu.RewindBuffer;
+import art.emu.invaders.SpaceInvadersMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What keeping frames to rewind costs on top of running them: saving the state and pushing it into the
+ * {@link RewindBuffer}. The buffer is capped, so the pushes include evictions once it's full
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RewindBenchmark {
+    private SpaceInvadersMachine machine;
+    private RewindBuffer rewindBuffer;
+    private final byte[] state = new byte[SpaceInvadersMachine.STATE_SIZE];
+    private final ByteBuffer stateBuffer = ByteBuffer.wrap(state);
+
+    @Setup
+    public void setUp () throws IOException {
+        machine = Machines.warmedUp(null);
+        rewindBuffer = new RewindBuffer(SpaceInvadersMachine.STATE_SIZE, 60, 4 * 1024 * 1024);
+    }
+
+    @Benchmark
+    public RewindBuffer saveAndPush () {
+        stateBuffer.clear();
+        machine.saveState(stateBuffer);
+        rewindBuffer.push(state);
+        machine.runFrame();
+        return rewindBuffer;
+    }
+
+    @Benchmark
+    public RewindBuffer frameOnly () {
+        machine.runFrame();
+        return rewindBuffer;
+    }
+}
@@ -0,0 +1,65 @@
+package art.emu.benchmarks;
+
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.jit.JitCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One host frame of {@link art.emu.invaders.SpaceInvaders} with run-ahead: the real frame, then saving, the frames
+ * ahead, copying out video RAM and loading the real frame back. 0 frames ahead is the real frame alone, all of it has
+ * to fit in the 16.7 ms of a frame at 60 Hz
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RunAheadBenchmark {
+    @Param({ "true", "false" })
+    public boolean jit;
+
+    @Param({ "0", "1", "2" })
+    public int frames;
+
+    private SpaceInvadersMachine machine;
+    private final byte[] state = new byte[SpaceInvadersMachine.STATE_SIZE];
+    private final ByteBuffer stateBuffer = ByteBuffer.wrap(state);
+    private final byte[] frame = new byte[SpaceInvadersMachine.V_RAM_SIZE];
+
+    @Setup
+    public void setUp () throws IOException {
+        machine = Machines.warmedUp(jit ? new JitCompiler() : null);
+    }
+
+    @Benchmark
+    public byte[] hostFrame () {
+        machine.runFrame();
+        if (frames > 0) {
+            stateBuffer.clear();
+            machine.saveState(stateBuffer);
+            for (int i = 0; i < frames; i++) {
+                machine.runFrame();
+            }
+            machine.copyVram(frame);
+            machine.loadState(state);
+        } else {
+            machine.copyVram(frame);
+        }
+        return frame;
+    }
+}
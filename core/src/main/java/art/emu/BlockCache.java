@@ -0,0 +1,481 @@
+package art.emu;
+
+import java.util.Arrays;
+
+/**
+ * Caches predecoded straight-line runs of instructions keyed by their start address, with the immediates
+ * already resolved so executing them never goes back to memory for the opcode or its operands.
+ * A block ends after the first instruction that branches, does I/O or touches the interrupt state, so every
+ * instruction before the last one falls through to the next.
+ * Physical pages holding a block are reported to {@link MemoryBus}, a write into one of them drops the blocks covering
+ * the written address. Blocks are kept by the address they ran from, so the cache remembers every page code in a
+ * physical page was decoded through and a write drops the blocks at all of those mirrors.
+ * With a {@link BlockCompiler} installed, blocks executed often enough are handed to it and run compiled from then on
+ * whenever the whole block fits in the remaining budget.
+ * Blocks that only wait ({@link IdleLoop}) are not run over and over: once one has gone round, the passes that fit in
+ * the rest of the budget are counted without running them. They are never compiled, a compiled loop would run every
+ * pass itself.
+ * A halted processor runs nothing, the rest of the budget goes by waiting for the interrupt that ends the HLT.
+ * The cache of a forked machine can start from the blocks its parent decoded from ROM, see
+ * {@link #shareRomBlocks(BlockCache)}
+ */
+public class BlockCache implements MemoryBus.CodeWriteListener {
+    private static final int MAX_BLOCK_INSTRUCTIONS = 32;
+    private static final int MAX_BLOCK_BYTES = MAX_BLOCK_INSTRUCTIONS * 3;
+
+    /**
+     * Interpreted runs before a block is handed to the {@link BlockCompiler}, high enough to skip boot code
+     */
+    public static final int DEFAULT_COMPILE_THRESHOLD = 64;
+
+    private static final boolean[] ENDS_BLOCK = new boolean[256];
+
+    static {
+        Instruction[] terminators = {
+            Instruction.JMP, Instruction.JZ, Instruction.JNZ, Instruction.JC, Instruction.JNC,
+            Instruction.JM, Instruction.JP, Instruction.JPE, Instruction.JPO,
+            Instruction.CALL, Instruction.CZ, Instruction.CNZ, Instruction.CC, Instruction.CNC,
+            Instruction.CM, Instruction.CP, Instruction.CPE, Instruction.CPO,
+            Instruction.RET, Instruction.RZ, Instruction.RNZ, Instruction.RC, Instruction.RNC,
+            Instruction.RM, Instruction.RP, Instruction.RPE, Instruction.RPO,
+            Instruction.RST_0, Instruction.RST_1, Instruction.RST_2, Instruction.RST_3,
+            Instruction.RST_4, Instruction.RST_5, Instruction.RST_6, Instruction.RST_7,
+            Instruction.PCHL, Instruction.HLT, Instruction.IN, Instruction.OUT, Instruction.EI, Instruction.DI,
+        };
+        for (Instruction instruction : terminators) {
+            ENDS_BLOCK[instruction.getOpcode()] = true;
+        }
+        for (int opcode = 0; opcode < ENDS_BLOCK.length; opcode++) {
+            if (Instruction.fromOpcode(opcode) == null) {
+                ENDS_BLOCK[opcode] = true;
+            }
+        }
+    }
+
+    static final class Block {
+        final int startAddress;
+        final int endAddress; // exclusive
+        final int[] opcodes;
+        final InstructionExecutor[] executors;
+        final int[] operands;
+        boolean valid = true;
+        final IdleLoop idleLoop; // null unless the block only waits
+        // cycles of all instructions but the last, none of them branches so they always take the same
+        final int leadCycles;
+        // cycles of one pass of a block that jumps back to its own start, 0 for any other
+        final int passCycles;
+
+        int executions;
+        CompiledBlock compiled;
+        int compiledMaxCycles;
+
+        Block (int startAddress, int endAddress, int[] opcodes, InstructionExecutor[] executors, int[] operands) {
+            this.startAddress = startAddress;
+            this.endAddress = endAddress;
+            this.opcodes = opcodes;
+            this.executors = executors;
+            this.operands = operands;
+            this.idleLoop = IdleLoop.analyze(startAddress, opcodes, operands);
+
+            int count = opcodes.length;
+            int lead = 0;
+            for (int i = 0; i < count - 1; i++) {
+                lead += Instruction.maxCycles(opcodes[i]);
+            }
+            this.leadCycles = lead;
+            int last = opcodes[count - 1];
+            boolean loops = (last == 0xC3 || (last & 0xC7) == 0xC2) && operands[count - 1] == startAddress;
+            this.passCycles = loops ? lead + Instruction.maxCycles(last) : 0;
+        }
+
+        /**
+         * @return instructions completed by a compiled run that took the cycles
+         */
+        int instructionsIn (int cycles) {
+            int count = opcodes.length;
+            int instructions = 0;
+            if (passCycles != 0) {
+                instructions = cycles / passCycles * count;
+                cycles %= passCycles;
+            }
+            if (cycles > leadCycles) {
+                return instructions + count;
+            }
+            // left early after an instruction that overwrote the block
+            for (int i = 0; cycles > 0; i++) {
+                cycles -= Instruction.maxCycles(opcodes[i]);
+                instructions++;
+            }
+            return instructions;
+        }
+    }
+
+    private final MemoryBus memory;
+    // blocks by start address, a page of them is only allocated once code starts in it
+    private final Block[][] blocks = new Block[MemoryBus.PAGE_COUNT][];
+    private final int[] blocksPerPage = new int[MemoryBus.MAX_MEMORY >> MemoryBus.PAGE_SHIFT];
+    // per physical page a bit for every page its blocks were decoded through, 4 longs per physical page
+    private final long[] codeAliases = new long[(MemoryBus.MAX_MEMORY >> MemoryBus.PAGE_SHIFT) * 4];
+    // pages of blocks another cache uses too, copied before a block is added to or dropped from them
+    private final boolean[] sharedPages = new boolean[MemoryBus.PAGE_COUNT];
+
+    private final int[] decodeOpcodes = new int[MAX_BLOCK_INSTRUCTIONS];
+    private final InstructionExecutor[] decodeExecutors = new InstructionExecutor[MAX_BLOCK_INSTRUCTIONS];
+    private final int[] decodeOperands = new int[MAX_BLOCK_INSTRUCTIONS];
+
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long compiledRuns;
+    private long compilations;
+    private long idleSkips;
+    private long skippedCycles;
+    private long instructions;
+    private long cycleCount;
+    private boolean stopping;
+
+    private BlockCompiler compiler;
+    private int compileThreshold;
+    private boolean idleSkipping = true;
+
+    public BlockCache (MemoryBus memory) {
+        this.memory = memory;
+        memory.setCodeWriteListener(this);
+    }
+
+    /**
+     * Runs whole blocks until the budget is used up, a block stops early only when the budget runs out
+     * mid block or the block overwrites itself
+     * @return cycles completed, at least budget unless budget is not positive or {@link #stop()} was called
+     */
+    public int execute (Processor processor, int budget) {
+        int cycles = 0;
+        int executed = 0; // instructions
+        int idleAddress = -1; // start of the idle loop that just went round
+        try {
+            while (cycles < budget && !stopping) {
+                if (processor.isHalted()) {
+                    cycles = budget;
+                    break;
+                }
+                int address = processor.getProgramCounter();
+                Block block = blockAt(address);
+                if (block == null) {
+                    block = decode(address);
+                    misses++;
+                } else {
+                    hits++;
+                }
+
+                if (idleSkipping && address == idleAddress) {
+                    int skipped = skipIdlePasses(processor, block, budget - cycles);
+                    cycles += skipped;
+                    executed += skipped / block.idleLoop.cycles * block.opcodes.length;
+                }
+
+                CompiledBlock compiled = block.compiled;
+                if (compiled != null && budget - cycles >= block.compiledMaxCycles) {
+                    // a compiled loop goes round for as long as the budget allows
+                    int run = compiled.execute(processor, budget - cycles);
+                    cycles += run;
+                    executed += block.instructionsIn(run);
+                    compiledRuns++;
+                } else {
+                    // idle loops stay interpreted, one pass is run and the rest skipped, compiled they would run every pass
+                    if (compiled == null && compiler != null && (block.idleLoop == null || !idleSkipping)
+                        && ++block.executions == compileThreshold) {
+                        compile(block);
+                    }
+
+                    InstructionExecutor[] executors = block.executors;
+                    int[] operands = block.operands;
+                    for (int i = 0; i < executors.length && cycles < budget; i++) {
+                        cycles += executors[i].execute(processor, operands[i]);
+                        executed++;
+                        if (!block.valid) {
+                            break;
+                        }
+                    }
+                }
+
+                idleAddress = block.idleLoop != null && block.valid && processor.getProgramCounter() == address
+                    ? address : -1;
+            }
+        } finally {
+            // counted even when an instruction threw, e.g. an undefined opcode
+            stopping = false;
+            instructions += executed;
+            cycleCount += cycles;
+        }
+        return cycles;
+    }
+
+    /**
+     * Makes the {@link #execute(Processor, int)} that is running return after the current block, for a device that
+     * ends the run, e.g. the warm boot of a CP/M program
+     */
+    public void stop () {
+        stopping = true;
+    }
+
+    /**
+     * @return cycles of the passes of the idle loop that fit in the budget, counted instead of run
+     */
+    private int skipIdlePasses (Processor processor, Block block, int budget) {
+        if (!block.idleLoop.readsAreQuiet(processor, memory)) {
+            return 0;
+        }
+        int skipped = budget / block.idleLoop.cycles * block.idleLoop.cycles;
+        if (skipped > 0) {
+            idleSkips++;
+            skippedCycles += skipped;
+        }
+        return skipped;
+    }
+
+    private Block decode (int startAddress) {
+        int count = 0;
+        int address = startAddress;
+        while (count < MAX_BLOCK_INSTRUCTIONS) {
+            int opcode = memory.readMemory(address);
+            decodeOpcodes[count] = opcode;
+            decodeExecutors[count] = Instruction.executorFor(opcode);
+            decodeOperands[count] = Instruction.readOperand(memory, address, opcode);
+            count++;
+            address += Instruction.LENGTHS[opcode];
+
+            if (ENDS_BLOCK[opcode] || address >= MemoryBus.MAX_MEMORY - 2) {
+                break;
+            }
+        }
+
+        Block block = new Block(startAddress, address, Arrays.copyOf(decodeOpcodes, count),
+            Arrays.copyOf(decodeExecutors, count), Arrays.copyOf(decodeOperands, count));
+        Block[] blockPage = blocks[startAddress >> MemoryBus.PAGE_SHIFT];
+        if (blockPage == null || sharedPages[startAddress >> MemoryBus.PAGE_SHIFT]) {
+            blockPage = blockPage == null ? new Block[MemoryBus.PAGE_SIZE] : blockPage.clone();
+            blocks[startAddress >> MemoryBus.PAGE_SHIFT] = blockPage;
+            sharedPages[startAddress >> MemoryBus.PAGE_SHIFT] = false;
+        }
+        blockPage[startAddress & (MemoryBus.PAGE_SIZE - 1)] = block;
+
+        for (int pageAddress = startAddress; pageAddress < address; pageAddress = nextPage(pageAddress)) {
+            int page = memory.physicalAddress(pageAddress) >> MemoryBus.PAGE_SHIFT;
+            int alias = (pageAddress >> MemoryBus.PAGE_SHIFT) & (MemoryBus.PAGE_COUNT - 1);
+            codeAliases[page << 2 | alias >> 6] |= 1L << alias;
+            if (blocksPerPage[page]++ == 0) {
+                memory.setCodePage(page, true);
+            }
+        }
+        return block;
+    }
+
+    private void compile (Block block) {
+        CompiledBlock compiled = compiler.compile(block.startAddress, block.opcodes, block.operands);
+        if (compiled != null) {
+            block.compiledMaxCycles = compiled.getMaxCycles();
+            block.compiled = compiled;
+            compilations++;
+        }
+    }
+
+    /**
+     * @param compiler compiler for hot blocks, null to only interpret
+     * @param threshold number of interpreted runs after which a block gets compiled
+     */
+    public void setCompiler (BlockCompiler compiler, int threshold) {
+        this.compiler = compiler;
+        this.compileThreshold = threshold;
+        if (compiler != null) {
+            // compiling changes the blocks themselves
+            dropSharedPages();
+        } else {
+            for (Block[] page : blocks) {
+                for (int i = 0; page != null && i < page.length; i++) {
+                    if (page[i] != null) {
+                        page[i].compiled = null;
+                        page[i].executions = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param idleSkipping false to run every pass of idle loops, for measuring what skipping them saves
+     */
+    public void setIdleSkipping (boolean idleSkipping) {
+        this.idleSkipping = idleSkipping;
+    }
+
+    public BlockCompiler getCompiler () {
+        return compiler;
+    }
+
+    public int getCompileThreshold () {
+        return compileThreshold;
+    }
+
+    /**
+     * Starts from the blocks the cache of the machine this one was forked from decoded from ROM, so the fork doesn't
+     * decode them again. The two caches keep sharing them on any thread: ROM never changes and a block that isn't
+     * compiled never changes either, a page of blocks is copied before a block is added to it. Nothing is shared when
+     * either cache has a compiler, and taking one on later drops the shared blocks. Pages right before RAM are left
+     * out, their blocks may run on into it and get dropped by a write there.
+     * ROM pages need no code tracking, nothing writes them
+     */
+    public void shareRomBlocks (BlockCache parent) {
+        if (compiler != null || parent.compiler != null) {
+            return;
+        }
+        for (int page = 0; page < MemoryBus.PAGE_COUNT - 1; page++) {
+            int address = page << MemoryBus.PAGE_SHIFT;
+            if (blocks[page] == null && parent.blocks[page] != null && memory.isRom(address)
+                && memory.isRom(address + MemoryBus.PAGE_SIZE)) {
+                blocks[page] = parent.blocks[page];
+                sharedPages[page] = true;
+                parent.sharedPages[page] = true;
+            }
+        }
+    }
+
+    // lets go of the shared pages without touching their blocks, the other cache still runs them
+    private void dropSharedPages () {
+        for (int page = 0; page < MemoryBus.PAGE_COUNT; page++) {
+            if (sharedPages[page]) {
+                blocks[page] = null;
+                sharedPages[page] = false;
+            }
+        }
+    }
+
+    /**
+     * @param address physical address written, the blocks at every mirror it was run through are dropped
+     */
+    @Override
+    public void codeWritten (int address) {
+        int page = address >> MemoryBus.PAGE_SHIFT;
+        for (int word = 0; word < 4; word++) {
+            long aliases = codeAliases[page << 2 | word];
+            while (aliases != 0) {
+                int alias = word << 6 | Long.numberOfTrailingZeros(aliases);
+                aliases &= aliases - 1;
+                invalidate(alias << MemoryBus.PAGE_SHIFT | (address & (MemoryBus.PAGE_SIZE - 1)));
+            }
+        }
+    }
+
+    private void invalidate (int address) {
+        for (int start = Math.max(0, address - MAX_BLOCK_BYTES + 1); start <= address; start++) {
+            Block block = blockAt(start);
+            if (block != null && block.endAddress > address) {
+                remove(block);
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops every block, needed after memory was changed behind the cache's back, e.g. through
+     * {@link MemoryBus#getMemoryBytes()}
+     */
+    public void clear () {
+        dropSharedPages();
+        for (Block[] page : blocks) {
+            for (int i = 0; page != null && i < page.length; i++) {
+                if (page[i] != null) {
+                    remove(page[i]);
+                }
+            }
+        }
+    }
+
+    private Block blockAt (int address) {
+        Block[] page = blocks[address >> MemoryBus.PAGE_SHIFT];
+        return page != null ? page[address & (MemoryBus.PAGE_SIZE - 1)] : null;
+    }
+
+    private void remove (Block block) {
+        block.valid = false;
+        blocks[block.startAddress >> MemoryBus.PAGE_SHIFT][block.startAddress & (MemoryBus.PAGE_SIZE - 1)] = null;
+        if (block.compiled != null) {
+            block.compiled.invalidate();
+        }
+
+        for (int pageAddress = block.startAddress; pageAddress < block.endAddress; pageAddress = nextPage(pageAddress)) {
+            int page = memory.physicalAddress(pageAddress) >> MemoryBus.PAGE_SHIFT;
+            if (--blocksPerPage[page] == 0) {
+                memory.setCodePage(page, false);
+                Arrays.fill(codeAliases, page << 2, (page + 1) << 2, 0);
+            }
+        }
+    }
+
+    private static int nextPage (int address) {
+        return (address | (MemoryBus.PAGE_SIZE - 1)) + 1;
+    }
+
+    public long getHits () {
+        return hits;
+    }
+
+    public long getMisses () {
+        return misses;
+    }
+
+    public long getInvalidations () {
+        return invalidations;
+    }
+
+    public long getIdleSkips () {
+        return idleSkips;
+    }
+
+    /**
+     * @return instructions run through the cache, including the passes of idle loops that were skipped
+     */
+    public long getInstructions () {
+        return instructions;
+    }
+
+    /**
+     * @return cycles run through the cache, including those of an {@link #execute(Processor, int)} that threw
+     */
+    public long getCycles () {
+        return cycleCount;
+    }
+
+    public long getCompiledRuns () {
+        return compiledRuns;
+    }
+
+    /**
+     * @return cycles of idle loop passes that were counted instead of run
+     */
+    public long getSkippedCycles () {
+        return skippedCycles;
+    }
+
+    public long getCompilations () {
+        return compilations;
+    }
+
+    public void resetCounters () {
+        hits = 0;
+        misses = 0;
+        invalidations = 0;
+        compiledRuns = 0;
+        compilations = 0;
+        idleSkips = 0;
+        skippedCycles = 0;
+        instructions = 0;
+        cycleCount = 0;
+    }
+
+    @Override
+    public String toString () {
+        return "BlockCache[hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations
+            + ", compilations=" + compilations + ", compiledRuns=" + compiledRuns + ", idleSkips=" + idleSkips
+            + ", skippedCycles=" + skippedCycles + ", instructions=" + instructions + ", cycles=" + cycleCount + "]";
+    }
+}
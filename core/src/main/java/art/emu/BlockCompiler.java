@@ -0,0 +1,13 @@
+package art.emu;
+
+/**
+ * Translates hot {@link BlockCache} blocks, installed with {@link BlockCache#setCompiler(BlockCompiler, int)}
+ */
+public interface BlockCompiler {
+    /**
+     * @param opcodes opcodes of the block in execution order, the block ends after the last one
+     * @param operands immediate operand of every instruction as passed to its {@link InstructionExecutor}
+     * @return compiled block, or null if this block can't be compiled
+     */
+    CompiledBlock compile (int startAddress, int[] opcodes, int[] operands);
+}
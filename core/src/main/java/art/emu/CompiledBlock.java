@@ -0,0 +1,27 @@
+package art.emu;
+
+/**
+ * A block translated to host code by a {@link BlockCompiler}
+ */
+public interface CompiledBlock {
+    /**
+     * Runs the whole block, or stops right after an instruction that overwrote the block itself.
+     * A block that jumps back to its own start may run again as long as another full pass fits in the budget
+     * @param budget cycles left, at least {@link #getMaxCycles()}
+     * @return cycles completed
+     */
+    int execute (Processor processor, int budget);
+
+    /**
+     * @return upper bound of the cycles one pass of {@link #execute(Processor, int)} can take, {@link BlockCache}
+     * only enters the block when this still fits in the budget so the block ends on the same instruction as the
+     * interpreter would
+     */
+    int getMaxCycles ();
+
+    /**
+     * Called by {@link BlockCache} when a write drops the block, a pass that is still running leaves right after
+     * the writing instruction
+     */
+    void invalidate ();
+}
@@ -1,7 +1,36 @@
 package art.emu;
 
 public class ConditionFlags {
-    private int bits;
+    // bit 1 of the flag byte always reads as 1 on the 8080
+    private static final int FIXED_BITS = 0x02;
+
+    private static final int ALL_FLAGS = ConditionBits.SIGN | ConditionBits.ZERO | ConditionBits.AUX_CARRY
+        | ConditionBits.PARITY | ConditionBits.CARRY;
+
+    /**
+     * Sign, zero and parity bits for every 8 bit result
+     */
+    private static final int[] SZP = new int[0x100];
+
+    /**
+     * Sign, zero, parity and carry bits indexed by the 9 bit result of an addition or subtraction,
+     * bit 8 is the carry out of an addition or the borrow of a subtraction
+     */
+    private static final int[] SZPC = new int[0x200];
+
+    static {
+        for (int value = 0; value < SZP.length; value++) {
+            int bits = value & ConditionBits.SIGN;
+            if (value == 0) bits |= ConditionBits.ZERO;
+            if (BitUtils.checkParity(value)) bits |= ConditionBits.PARITY;
+            SZP[value] = bits;
+        }
+        for (int result = 0; result < SZPC.length; result++) {
+            SZPC[result] = SZP[result & 0xFF] | (result >> 8);
+        }
+    }
+
+    protected int bits;
 
     public ConditionFlags () {
         bits = BitUtils.setBit(bits, 1);
@@ -24,29 +53,93 @@ public class ConditionFlags {
     }
 
     public void setFromByte (int value) {
-        setFlag(ConditionBits.SIGN, ((value & ConditionBits.SIGN) >> 7) == 1);
-        setFlag(ConditionBits.ZERO, ((value & ConditionBits.ZERO) >> 6) == 1);
-        setFlag(ConditionBits.AUX_CARRY, ((value & ConditionBits.AUX_CARRY) >> 4) == 1);
-        setFlag(ConditionBits.PARITY, ((value & ConditionBits.PARITY) >> 2) == 1);
-        setFlag(ConditionBits.CARRY, (value & ConditionBits.CARRY) == 1);
+        bits = (value & ALL_FLAGS) | FIXED_BITS;
     }
 
     public void setFromAddition (int a1, int a2) {
-        int result = a1 + a2;
+        setFromAddition(a1, a2, 0);
+    }
 
-        setFlag(ConditionBits.SIGN, (result & 0x80) != 0);
-        setFlag(ConditionBits.CARRY, result > 0xFF);
-        setFlag(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setFlag(ConditionBits.PARITY,  BitUtils.checkParity(result));
-        setFlag(ConditionBits.AUX_CARRY, ((a1 & 0x0F) + (a2 & 0x0F)) > 0x0F);
+    /**
+     * ADC and ACI
+     * @param carry the carry going in, 0 or 1
+     */
+    public void setFromAddition (int a1, int a2, int carry) {
+        bits = additionFlags(a1, a2, carry);
     }
 
     public void setFromSubtraction (int a1, int a2) {
-        int result = a1 - a2;
-        setFlag(ConditionBits.SIGN, (result & 0x80) != 0);
-        setFlag(ConditionBits.CARRY, a1 < a2);
-        setFlag(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setFlag(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setFlag(ConditionBits.AUX_CARRY, ((a1 & 0x0F) - (a2 & 0x0F)) < 0);
+        setFromSubtraction(a1, a2, 0);
+    }
+
+    /**
+     * SBB and SBI
+     * @param borrow the carry going in, 0 or 1
+     */
+    public void setFromSubtraction (int a1, int a2, int borrow) {
+        bits = subtractionFlags(a1, a2, borrow);
+    }
+
+    /**
+     * ANA, XRA, ORA and their immediate forms, carry and aux carry are cleared
+     */
+    public void setFromLogic (int result) {
+        bits = logicFlags(result);
+    }
+
+    /**
+     * INR leaves the carry untouched
+     */
+    public void setFromIncrement (int value) {
+        bits = incrementFlags(value, bits & ConditionBits.CARRY);
+    }
+
+    /**
+     * DCR leaves the carry untouched, the aux carry is set unless the low nibble was 0 like for every subtraction
+     */
+    public void setFromDecrement (int value) {
+        bits = decrementFlags(value, bits & ConditionBits.CARRY);
+    }
+
+    /**
+     * DAA leaves the aux carry untouched
+     */
+    public void setFromDecimalAdjust (int result, boolean carry) {
+        bits = (bits & ConditionBits.AUX_CARRY) | SZP[result & 0xFF] | (carry ? ConditionBits.CARRY : 0) | FIXED_BITS;
+    }
+
+    public static int additionFlags (int a1, int a2) {
+        return additionFlags(a1, a2, 0);
+    }
+
+    // bit 4 of (a1 ^ a2 ^ result) is the carry (or borrow) into bit 4, which lines up with AUX_CARRY
+    public static int additionFlags (int a1, int a2, int carry) {
+        int result = a1 + a2 + carry;
+        return SZPC[result & 0x1FF] | ((a1 ^ a2 ^ result) & ConditionBits.AUX_CARRY) | FIXED_BITS;
+    }
+
+    public static int subtractionFlags (int a1, int a2) {
+        return subtractionFlags(a1, a2, 0);
+    }
+
+    // the 8080 subtracts by adding the complement, its aux carry is the carry out of bit 3 of that addition, which
+    // is set exactly when nothing borrows into bit 4
+    public static int subtractionFlags (int a1, int a2, int borrow) {
+        int result = a1 - a2 - borrow;
+        return SZPC[result & 0x1FF] | (~(a1 ^ a2 ^ result) & ConditionBits.AUX_CARRY) | FIXED_BITS;
+    }
+
+    public static int logicFlags (int result) {
+        return SZP[result & 0xFF] | FIXED_BITS;
+    }
+
+    public static int incrementFlags (int value, int carry) {
+        int result = value + 1;
+        return carry | SZP[result & 0xFF] | ((value ^ result) & ConditionBits.AUX_CARRY) | FIXED_BITS;
+    }
+
+    public static int decrementFlags (int value, int carry) {
+        int result = value - 1;
+        return carry | SZP[result & 0xFF] | (~(value ^ result) & ConditionBits.AUX_CARRY) | FIXED_BITS;
     }
 }
@@ -1,15 +1,42 @@
 package art.emu;
 
+import art.emu.invaders.FrameProducer;
 import art.emu.invaders.SpaceInvaders;
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
 
 public class Emulator extends ApplicationAdapter {
+    private final BlockCompiler blockCompiler;
+    private final FrameProducer frameProducer;
+    private final RewindBuffer rewindBuffer;
+    private final int runAheadFrames;
+    private final FileHandle movieFile;
     private SpaceInvaders spaceInvaders;
 
+    public Emulator () {
+        this(null, null, null, 0, null);
+    }
+
+    /**
+     * @param blockCompiler compiler for hot blocks, null to only interpret
+     * @param frameProducer runs the emulation on its own thread, null to run it on the render thread
+     * @param rewindBuffer frames to rewind through while backspace is held, null to not rewind
+     * @param runAheadFrames frames to run ahead and show to cut input lag, 0 for none
+     * @param movieFile file to record the inputs of the session to, null to not record
+     */
+    public Emulator (BlockCompiler blockCompiler, FrameProducer frameProducer, RewindBuffer rewindBuffer,
+        int runAheadFrames, FileHandle movieFile) {
+        this.blockCompiler = blockCompiler;
+        this.frameProducer = frameProducer;
+        this.rewindBuffer = rewindBuffer;
+        this.runAheadFrames = runAheadFrames;
+        this.movieFile = movieFile;
+    }
+
     @Override
     public void create() {
-        spaceInvaders = new SpaceInvaders();
+        spaceInvaders = new SpaceInvaders(blockCompiler, frameProducer, rewindBuffer, runAheadFrames, movieFile);
     }
 
     @Override
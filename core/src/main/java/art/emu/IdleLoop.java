@@ -0,0 +1,210 @@
+package art.emu;
+
+/**
+ * A block that only waits: it jumps back to its own start and apart from that only reads memory and computes
+ * registers and flags from what it read, nothing it reads is left over from the pass before. Once such a block has
+ * gone round, every further pass is exactly the same until something changes the memory it reads, and on a machine
+ * without DMA only the CPU itself does, in an interrupt handler. So passes can be counted instead of run up to the
+ * next event without any difference anyone could observe. A HLT needs none of this, {@link BlockCache} waits out
+ * the budget while the processor is halted.
+ * Pages with a read handler don't qualify, their reads may change every time
+ */
+final class IdleLoop {
+    // register bits use the register numbers of the opcodes, 6 (M) is never set
+    private static final int A = 1 << Registers.ACCUMULATOR;
+    private static final int HL = 1 << Registers.H | 1 << Registers.L;
+    private static final int SP = 1 << 6;
+    private static final int ZERO = 1 << 8, SIGN = 1 << 9, PARITY = 1 << 10, CARRY = 1 << 11, AUX_CARRY = 1 << 12;
+    private static final int ALL_FLAGS = ZERO | SIGN | PARITY | CARRY | AUX_CARRY;
+    private static final int[] CONDITION_FLAGS = { ZERO, ZERO, CARRY, CARRY, PARITY, PARITY, SIGN, SIGN };
+
+    private static final int M = 6;
+
+    /**
+     * Cycles of one pass
+     */
+    final int cycles;
+    // addresses of LDA and LHLD
+    private final int[] fixedReads;
+    // register pairs, 0 BC, 1 DE, 2 HL, that address the memory read through them
+    private final int pairReads;
+
+    private IdleLoop (int cycles, int[] fixedReads, int pairReads) {
+        this.cycles = cycles;
+        this.fixedReads = fixedReads;
+        this.pairReads = pairReads;
+    }
+
+    /**
+     * @return the block as an idle loop, null if it isn't one
+     */
+    static IdleLoop analyze (int startAddress, int[] opcodes, int[] operands) {
+        int count = opcodes.length;
+        int cycles = 0;
+        int written = 0;
+        int readFirst = 0; // read before the pass wrote them, i.e. left over from the pass before
+        int[] fixedReads = new int[0];
+        int pairReads = 0;
+
+        for (int i = 0; i < count; i++) {
+            int opcode = opcodes[i];
+            int reads;
+            int writes;
+            boolean last = i == count - 1;
+
+            if (opcode == 0xC3 || (opcode & 0xC7) == 0xC2) { // JMP, Jcc
+                if (!last || operands[i] != startAddress) {
+                    return null;
+                }
+                reads = opcode == 0xC3 ? 0 : CONDITION_FLAGS[(opcode >> 3) & 0x07];
+                writes = 0;
+                cycles += 10;
+            } else if (last) {
+                return null;
+            } else if (opcode >= 0x40 && opcode < 0x80) { // MOV
+                int destination = (opcode >> 3) & 0x07;
+                int source = opcode & 0x07;
+                if (destination == M) {
+                    return null;
+                }
+                if (source == M) {
+                    reads = HL;
+                    pairReads |= 1 << 2;
+                    cycles += 7;
+                } else {
+                    reads = 1 << source;
+                    cycles += 5;
+                }
+                writes = 1 << destination;
+            } else if (opcode >= 0x80 && opcode < 0xC0 || (opcode & 0xC7) == 0xC6) { // ALU with a register, M or data
+                int operation = (opcode >> 3) & 0x07;
+                reads = A | (operation == 1 || operation == 3 ? CARRY : 0); // ADC, SBB
+                if (opcode >= 0xC0) {
+                    cycles += 7;
+                } else if ((opcode & 0x07) == M) {
+                    reads |= HL;
+                    pairReads |= 1 << 2;
+                    cycles += 7;
+                } else {
+                    reads |= 1 << (opcode & 0x07);
+                    cycles += 4;
+                }
+                writes = (operation == 7 ? 0 : A) | ALL_FLAGS; // CMP leaves A alone
+            } else if ((opcode & 0xC7) == 0x06) { // MVI
+                int register = (opcode >> 3) & 0x07;
+                if (register == M) {
+                    return null;
+                }
+                reads = 0;
+                writes = 1 << register;
+                cycles += 7;
+            } else if ((opcode & 0xC6) == 0x04) { // INR, DCR
+                int register = (opcode >> 3) & 0x07;
+                if (register == M) {
+                    return null;
+                }
+                reads = 1 << register;
+                writes = 1 << register | ZERO | SIGN | PARITY | AUX_CARRY;
+                cycles += 5;
+            } else if (opcode == 0x3A) { // LDA
+                fixedReads = append(fixedReads, operands[i]);
+                reads = 0;
+                writes = A;
+                cycles += 13;
+            } else if (opcode == 0x2A) { // LHLD
+                fixedReads = append(append(fixedReads, operands[i]), operands[i] + 1);
+                reads = 0;
+                writes = HL;
+                cycles += 16;
+            } else if (opcode == 0x0A || opcode == 0x1A) { // LDAX
+                int pair = (opcode >> 4) & 0x03;
+                reads = pairBits(pair);
+                pairReads |= 1 << pair;
+                writes = A;
+                cycles += 7;
+            } else if ((opcode & 0xCF) == 0x01) { // LXI
+                reads = 0;
+                writes = pairBits((opcode >> 4) & 0x03);
+                cycles += 10;
+            } else if ((opcode & 0xC7) == 0x03) { // INX, DCX
+                reads = pairBits((opcode >> 4) & 0x03);
+                writes = reads;
+                cycles += 5;
+            } else if ((opcode & 0xCF) == 0x09) { // DAD
+                reads = HL | pairBits((opcode >> 4) & 0x03);
+                writes = HL | CARRY;
+                cycles += 10;
+            } else {
+                switch (opcode) {
+                    case 0x00: // NOP
+                        reads = 0;
+                        writes = 0;
+                        break;
+                    case 0x07: case 0x0F: // RLC, RRC
+                        reads = A;
+                        writes = A | CARRY;
+                        break;
+                    case 0x17: case 0x1F: // RAL, RAR
+                        reads = A | CARRY;
+                        writes = A | CARRY;
+                        break;
+                    case 0x2F: // CMA
+                        reads = A;
+                        writes = A;
+                        break;
+                    case 0x37: // STC
+                        reads = 0;
+                        writes = CARRY;
+                        break;
+                    case 0x3F: // CMC
+                        reads = CARRY;
+                        writes = CARRY;
+                        break;
+                    default:
+                        return null;
+                }
+                cycles += 4;
+            }
+
+            readFirst |= reads & ~written;
+            written |= writes;
+        }
+
+        if ((readFirst & written) != 0) {
+            return null; // something carries over from one pass to the next, e.g. a delay counter
+        }
+        return new IdleLoop(cycles, fixedReads, pairReads);
+    }
+
+    private static int pairBits (int pair) {
+        return pair == 3 ? SP : 1 << (pair * 2) | 1 << (pair * 2 + 1);
+    }
+
+    private static int[] append (int[] values, int value) {
+        int[] appended = new int[values.length + 1];
+        System.arraycopy(values, 0, appended, 0, values.length);
+        appended[values.length] = value;
+        return appended;
+    }
+
+    /**
+     * @return true if nothing the loop reads sits on a page with a read handler, checked with the registers the
+     * last pass left behind
+     */
+    boolean readsAreQuiet (Processor processor, MemoryBus memory) {
+        for (int address : fixedReads) {
+            if (memory.hasReadHandler(address)) {
+                return false;
+            }
+        }
+        for (int pair = 0; pair < 3; pair++) {
+            if ((pairReads & 1 << pair) != 0) {
+                int address = processor.getRegisterValue(pair * 2) << 8 | processor.getRegisterValue(pair * 2 + 1);
+                if (memory.hasReadHandler(address)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
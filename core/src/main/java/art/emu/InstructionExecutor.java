@@ -1,5 +1,5 @@
 package art.emu;
 
 public interface InstructionExecutor {
-    int execute (Processor processor, int opcode);
+    int execute (Processor processor, int operand);
 }
@@ -0,0 +1,127 @@
+package art.emu;
+
+/**
+ * Defers flag computation until something reads the flags.
+ * Only the kind and operands of the last flag-setting operation are recorded, most of them get overwritten
+ * by the next ALU operation before any conditional instruction, PUSH PSW or getBits() looks at them
+ */
+public class LazyConditionFlags extends ConditionFlags {
+    private static final int NONE = 0;
+    private static final int ADDITION = 1;
+    private static final int SUBTRACTION = 2;
+    private static final int LOGIC = 3;
+    private static final int INCREMENT = 4;
+    private static final int DECREMENT = 5;
+
+    private int pendingOperation = NONE;
+    private int operand1, operand2;
+    // carry going into ADC, SBB, ACI and SBI
+    private int operandCarry;
+
+    // INR/DCR keep the carry of whatever came before them, so it is captured without materializing the rest
+    private int pendingCarry;
+
+    @Override
+    public int getBits () {
+        materialize();
+        return super.getBits();
+    }
+
+    @Override
+    public void setFlag (int flag, boolean value) {
+        materialize();
+        super.setFlag(flag, value);
+    }
+
+    @Override
+    public boolean isFlagSet (int flag) {
+        materialize();
+        return super.isFlagSet(flag);
+    }
+
+    @Override
+    public void setFromByte (int value) {
+        pendingOperation = NONE;
+        super.setFromByte(value);
+    }
+
+    @Override
+    public void setFromAddition (int a1, int a2, int carry) {
+        record(ADDITION, a1, a2);
+        operandCarry = carry;
+    }
+
+    @Override
+    public void setFromSubtraction (int a1, int a2, int borrow) {
+        record(SUBTRACTION, a1, a2);
+        operandCarry = borrow;
+    }
+
+    @Override
+    public void setFromLogic (int result) {
+        record(LOGIC, result, 0);
+    }
+
+    @Override
+    public void setFromIncrement (int value) {
+        pendingCarry = carry();
+        record(INCREMENT, value, 0);
+    }
+
+    @Override
+    public void setFromDecrement (int value) {
+        pendingCarry = carry();
+        record(DECREMENT, value, 0);
+    }
+
+    @Override
+    public void setFromDecimalAdjust (int result, boolean carry) {
+        materialize();
+        super.setFromDecimalAdjust(result, carry);
+    }
+
+    private void record (int operation, int a1, int a2) {
+        pendingOperation = operation;
+        operand1 = a1;
+        operand2 = a2;
+    }
+
+    private int carry () {
+        switch (pendingOperation) {
+            case ADDITION:
+                return ((operand1 + operand2 + operandCarry) >> 8) & ConditionBits.CARRY;
+            case SUBTRACTION:
+                return ((operand1 - operand2 - operandCarry) >> 8) & ConditionBits.CARRY;
+            case LOGIC:
+                return 0;
+            case INCREMENT:
+            case DECREMENT:
+                return pendingCarry;
+            default:
+                return bits & ConditionBits.CARRY;
+        }
+    }
+
+    private void materialize () {
+        switch (pendingOperation) {
+            case NONE:
+                return;
+            case ADDITION:
+                bits = additionFlags(operand1, operand2, operandCarry);
+                break;
+            case SUBTRACTION:
+                bits = subtractionFlags(operand1, operand2, operandCarry);
+                break;
+            case LOGIC:
+                bits = logicFlags(operand1);
+                break;
+            case INCREMENT:
+                bits = incrementFlags(operand1, pendingCarry);
+                break;
+            case DECREMENT:
+                bits = decrementFlags(operand1, pendingCarry);
+                break;
+        }
+        pendingOperation = NONE;
+    }
+}
@@ -0,0 +1,404 @@
+package art.emu;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 64K address space cut into 256 byte pages, each mapped onto a page of one backing array.
+ * Reads and writes of plain RAM and ROM pages are a table lookup and an array access, mirrors and read only pages
+ * are just different table entries. Pages with a {@link PageHandler} installed go to the handler instead, and pages
+ * holding predecoded code take the slower write path so the {@link CodeWriteListener} hears about the write.
+ * The default layout puts ROM at the bottom and RAM after it, the RAM repeats up to the top of the address space and
+ * writes into the ROM land in a spare page past the RAM.
+ * ROM and RAM live in arrays of their own, so machines running the same program can share one ROM array and only
+ * allocate their RAM. Physical addresses still count through both, ROM first.
+ * {@link #fork()} shares the RAM too: both buses keep reading the pages as they were and a page is only copied into
+ * a bus's own array the first time that bus writes to it
+ */
+public class MemoryBus {
+    private final byte[] rom;
+    private boolean romShared;
+    // RAM then the spare page, index 0 is physical address ramStart, null until a fork writes
+    private byte[] memoryBytes;
+    // array every RAM page lives in at its usual index, memoryBytes once the page is the bus's own. Arrays given up
+    // by a fork are never written again
+    private final byte[][] ramPages;
+    public static final int MAX_MEMORY = 0x10000;
+    private static final int ADDRESS_MASK = MAX_MEMORY - 1;
+
+    public static final int PAGE_SHIFT = 8;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    public static final int PAGE_COUNT = MAX_MEMORY >> PAGE_SHIFT;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+
+    // entry of the fast tables for pages that have to take the slow path
+    private static final int SLOW = -1;
+
+    /**
+     * Notified when something writes into a page that holds predecoded code
+     */
+    public interface CodeWriteListener {
+        void codeWritten (int address);
+    }
+
+    /**
+     * Takes every read and write of the pages it is installed on, or only the writes if it was installed for writes
+     * only. {@link #readMapped(int)} and {@link #writeMapped(int, int)} still reach the bytes the page is mapped to
+     */
+    public interface PageHandler {
+        int read (MemoryBus bus, int address);
+
+        void write (MemoryBus bus, int address, int value);
+    }
+
+    private final int ramStart;
+    private final int ramSize;
+    private final int romWriteSink;
+
+    // physical start of the backing page every page reads from and writes to
+    private final int[] readBase = new int[PAGE_COUNT];
+    private final int[] writeBase = new int[PAGE_COUNT];
+    // array a page reads from and where the page starts in it, writes always go to memoryBytes
+    private final byte[][] readArray = new byte[PAGE_COUNT][];
+    private final int[] readOffset = new int[PAGE_COUNT];
+    // offsets into readArray and memoryBytes, or SLOW where a handler or code tracking needs to see the access
+    private final int[] fastRead = new int[PAGE_COUNT];
+    private final int[] fastWrite = new int[PAGE_COUNT];
+    private final PageHandler[] handlers = new PageHandler[PAGE_COUNT];
+    private final boolean[] handledReads = new boolean[PAGE_COUNT];
+
+    private final boolean[] codePages;
+    private CodeWriteListener codeWriteListener;
+
+    /**
+     * @param size RAM from address 0, a multiple of {@link #PAGE_SIZE}
+     */
+    public MemoryBus (int size) {
+        this(0, size);
+    }
+
+    /**
+     * @param romSize read only bytes from address 0, a multiple of {@link #PAGE_SIZE}
+     * @param ramSize RAM right after the ROM, a multiple of {@link #PAGE_SIZE}, mirrored over the rest of the
+     * address space
+     */
+    public MemoryBus (int romSize, int ramSize) {
+        this(new byte[checkSize(romSize, ramSize)], ramSize, false);
+    }
+
+    /**
+     * @param rom read only bytes from address 0, shared with other buses and never written, its length a multiple
+     * of {@link #PAGE_SIZE}
+     * @param ramSize RAM right after the ROM, a multiple of {@link #PAGE_SIZE}, mirrored over the rest of the
+     * address space
+     */
+    public MemoryBus (byte[] rom, int ramSize) {
+        this(rom, ramSize, true);
+    }
+
+    private MemoryBus (byte[] rom, int ramSize, boolean romShared) {
+        int romSize = rom.length;
+        if (ramSize <= 0 || romSize + ramSize > MAX_MEMORY || ((romSize | ramSize) & OFFSET_MASK) != 0) {
+            throw new IllegalArgumentException("Invalid memory layout, rom " + romSize + ", ram " + ramSize);
+        }
+        this.rom = rom;
+        this.romShared = romShared;
+        this.ramStart = romSize;
+        this.ramSize = ramSize;
+        romWriteSink = romSize + ramSize;
+        memoryBytes = new byte[ramSize + PAGE_SIZE];
+        ramPages = new byte[(ramSize >> PAGE_SHIFT) + 1][];
+        Arrays.fill(ramPages, memoryBytes);
+        codePages = new boolean[(romWriteSink + PAGE_SIZE) >> PAGE_SHIFT];
+
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            int address = page << PAGE_SHIFT;
+            if (address < romSize) {
+                mapPage(page, address, true);
+            } else {
+                mapPage(page, romSize + (address - romSize) % ramSize, false);
+            }
+        }
+    }
+
+    // the fork maps what the parent maps, page handlers stay with the parent
+    private MemoryBus (MemoryBus parent) {
+        rom = parent.rom;
+        romShared = true;
+        ramStart = parent.ramStart;
+        ramSize = parent.ramSize;
+        romWriteSink = parent.romWriteSink;
+        ramPages = parent.ramPages.clone();
+        codePages = new boolean[parent.codePages.length];
+        System.arraycopy(parent.readBase, 0, readBase, 0, PAGE_COUNT);
+        System.arraycopy(parent.writeBase, 0, writeBase, 0, PAGE_COUNT);
+        System.arraycopy(parent.readArray, 0, readArray, 0, PAGE_COUNT);
+        System.arraycopy(parent.readOffset, 0, readOffset, 0, PAGE_COUNT);
+        // no handlers and no page of its own yet: every read is fast, every write copies a page first
+        System.arraycopy(readOffset, 0, fastRead, 0, PAGE_COUNT);
+        Arrays.fill(fastWrite, SLOW);
+    }
+
+    /**
+     * A bus mapped like this one with the same ROM and RAM contents, for a copy of the machine to go its own way.
+     * Nothing is copied up front: from now on neither bus writes the RAM arrays they share, each copies a page into
+     * an array of its own on its first write there. Both buses can then run on different threads, but forking itself
+     * has to happen on the thread running this one. Page handlers and the code write listener are not carried over
+     * and the ROM can't be loaded into anymore
+     */
+    public MemoryBus fork () {
+        romShared = true;
+        MemoryBus fork = new MemoryBus(this);
+        if (memoryBytes != null) {
+            memoryBytes = null;
+            for (int page = 0; page < PAGE_COUNT; page++) {
+                updateFastPath(page);
+            }
+        }
+        return fork;
+    }
+
+    private static int checkSize (int romSize, int ramSize) {
+        if (romSize < 0) {
+            throw new IllegalArgumentException("Invalid memory layout, rom " + romSize + ", ram " + ramSize);
+        }
+        return romSize;
+    }
+
+    /**
+     * @return RAM followed by the spare page, see {@link #ramIndex(int)}. Without ROM the index is the address. On a
+     * forked bus every page still shared is copied first, see {@link #readArray(int)} to only read
+     */
+    public byte[] getMemoryBytes () {
+        for (int ramPage = 0; ramPage < ramPages.length; ramPage++) {
+            ownPage(ramPage);
+        }
+        return this.memoryBytes;
+    }
+
+    /**
+     * @return array the address reads from without its page's handler, at {@link #readOffset(int)}
+     */
+    public byte[] readArray (int address) {
+        return readArray[(address & ADDRESS_MASK) >> PAGE_SHIFT];
+    }
+
+    public int readOffset (int address) {
+        address &= ADDRESS_MASK;
+        return readOffset[address >> PAGE_SHIFT] | (address & OFFSET_MASK);
+    }
+
+    /**
+     * @return index into {@link #getMemoryBytes()} of a RAM address
+     */
+    public int ramIndex (int address) {
+        return physicalAddress(address) - ramStart;
+    }
+
+    /**
+     * Copies bytes into the ROM, only for a ROM of the bus's own
+     * @throws IllegalStateException if the ROM is shared
+     */
+    public void loadRom (int offset, byte[] bytes) {
+        if (romShared) {
+            throw new IllegalStateException("The ROM is shared, load it before handing it to the bus");
+        }
+        System.arraycopy(bytes, 0, rom, offset, bytes.length);
+    }
+
+    /**
+     * Points a page at another backing page, e.g. to mirror it or to bank switch
+     * @param physicalAddress start of the backing page, a multiple of {@link #PAGE_SIZE}
+     * @param readOnly writes are dropped, ROM pages have to be read only
+     */
+    public void mapPage (int page, int physicalAddress, boolean readOnly) {
+        boolean inRom = physicalAddress < ramStart;
+        if (inRom && !readOnly) {
+            throw new IllegalArgumentException("ROM page 0x" + Integer.toHexString(physicalAddress) + " mapped writable");
+        }
+        readBase[page] = physicalAddress;
+        readArray[page] = inRom ? rom : ramPages[(physicalAddress - ramStart) >> PAGE_SHIFT];
+        readOffset[page] = inRom ? physicalAddress : physicalAddress - ramStart;
+        writeBase[page] = readOnly ? romWriteSink : physicalAddress;
+        updateFastPath(page);
+    }
+
+    /**
+     * @param handler takes over every access to the page, null to go back to the plain mapping
+     */
+    public void setPageHandler (int page, PageHandler handler) {
+        setPageHandler(page, handler, true);
+    }
+
+    /**
+     * @param reads false to keep reads on the fast path, the handler only sees writes
+     */
+    public void setPageHandler (int page, PageHandler handler, boolean reads) {
+        handlers[page] = handler;
+        handledReads[page] = handler != null && reads;
+        updateFastPath(page);
+    }
+
+    public PageHandler getPageHandler (int page) {
+        return handlers[page];
+    }
+
+    private void updateFastPath (int page) {
+        boolean handled = handlers[page] != null;
+        fastRead[page] = handledReads[page] ? SLOW : readOffset[page];
+        int ramPage = (writeBase[page] - ramStart) >> PAGE_SHIFT;
+        fastWrite[page] = handled || codePages[writeBase[page] >> PAGE_SHIFT] || ramPages[ramPage] != memoryBytes
+            ? SLOW : writeBase[page] - ramStart;
+    }
+
+    // copies a RAM page still shared with another bus into the bus's own array
+    private void ownPage (int ramPage) {
+        byte[] shared = ramPages[ramPage];
+        if (shared == memoryBytes) {
+            return;
+        }
+        if (memoryBytes == null) {
+            memoryBytes = new byte[ramSize + PAGE_SIZE];
+        }
+        System.arraycopy(shared, ramPage << PAGE_SHIFT, memoryBytes, ramPage << PAGE_SHIFT, PAGE_SIZE);
+        ramPages[ramPage] = memoryBytes;
+
+        int physicalAddress = ramStart + (ramPage << PAGE_SHIFT);
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            if (readBase[page] == physicalAddress) {
+                readArray[page] = memoryBytes;
+            }
+            if (writeBase[page] == physicalAddress) {
+                updateFastPath(page);
+            }
+        }
+    }
+
+    /**
+     * @return true if reads of the address go to a handler instead of memory
+     */
+    public boolean hasReadHandler (int address) {
+        return handledReads[(address & ADDRESS_MASK) >> PAGE_SHIFT];
+    }
+
+    /**
+     * @return physical address the address reads from, ROM first then RAM
+     */
+    public int physicalAddress (int address) {
+        address &= ADDRESS_MASK;
+        return readBase[address >> PAGE_SHIFT] | (address & OFFSET_MASK);
+    }
+
+    /**
+     * @return true if the address reads from the ROM
+     */
+    public boolean isRom (int address) {
+        return physicalAddress(address) < ramStart;
+    }
+
+    public int readMemory (int address) {
+        address &= ADDRESS_MASK;
+        int base = fastRead[address >> PAGE_SHIFT];
+        if (base != SLOW) {
+            return readArray[address >> PAGE_SHIFT][base | (address & OFFSET_MASK)] & 0xFF;
+        }
+        return handlers[address >> PAGE_SHIFT].read(this, address);
+    }
+
+    public void writeMemory (int address, int value) {
+        address &= ADDRESS_MASK;
+        int base = fastWrite[address >> PAGE_SHIFT];
+        if (base != SLOW) {
+            memoryBytes[base | (address & OFFSET_MASK)] = (byte) value;
+        } else {
+            writeSlow(address, value);
+        }
+    }
+
+    // kept out of writeMemory so the fast path stays small enough to inline into the instructions
+    private void writeSlow (int address, int value) {
+        PageHandler handler = handlers[address >> PAGE_SHIFT];
+        if (handler != null) {
+            handler.write(this, address, value);
+        } else {
+            writeMapped(address, value);
+        }
+    }
+
+    /**
+     * Reads the mapped byte without going through the page's handler
+     */
+    public int readMapped (int address) {
+        address &= ADDRESS_MASK;
+        return readArray[address >> PAGE_SHIFT][readOffset[address >> PAGE_SHIFT] | (address & OFFSET_MASK)] & 0xFF;
+    }
+
+    /**
+     * Writes the mapped byte without going through the page's handler, predecoded code is still invalidated
+     */
+    public void writeMapped (int address, int value) {
+        address &= ADDRESS_MASK;
+        int physical = writeBase[address >> PAGE_SHIFT] | (address & OFFSET_MASK);
+        if (ramPages[(physical - ramStart) >> PAGE_SHIFT] != memoryBytes) {
+            ownPage((physical - ramStart) >> PAGE_SHIFT);
+        }
+        memoryBytes[physical - ramStart] = (byte) value;
+
+        if (codePages[physical >> PAGE_SHIFT]) {
+            codeWriteListener.codeWritten(physical);
+        }
+    }
+
+    public int getRamSize () {
+        return ramSize;
+    }
+
+    /**
+     * Writes the RAM of the default layout, {@link #getRamSize()} bytes, ROM is left out
+     */
+    public void writeRam (ByteBuffer buffer) {
+        for (int index = 0; index < ramSize; index += PAGE_SIZE) {
+            buffer.put(ramPages[index >> PAGE_SHIFT], index, PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Overwrites the RAM, predecoded code in RAM is invalidated wherever the new contents differ
+     */
+    public void readRam (ByteBuffer buffer) {
+        for (int index = 0; index < ramSize; index += PAGE_SIZE) {
+            int page = (ramStart + index) >> PAGE_SHIFT;
+            ownPage(index >> PAGE_SHIFT);
+            if (!codePages[page]) {
+                buffer.get(memoryBytes, index, PAGE_SIZE);
+                continue;
+            }
+            for (int i = index; i < index + PAGE_SIZE; i++) {
+                byte value = buffer.get();
+                if (memoryBytes[i] != value) {
+                    memoryBytes[i] = value;
+                    // the listener can clear the code page, check it for every byte
+                    if (codePages[page]) {
+                        codeWriteListener.codeWritten(ramStart + i);
+                    }
+                }
+            }
+        }
+    }
+
+    public void setCodeWriteListener (CodeWriteListener listener) {
+        this.codeWriteListener = listener;
+    }
+
+    /**
+     * @param page physical page, {@link #physicalAddress(int)} shifted by {@link #PAGE_SHIFT}
+     */
+    public void setCodePage (int page, boolean code) {
+        codePages[page] = code;
+        for (int mapped = 0; mapped < PAGE_COUNT; mapped++) {
+            if (writeBase[mapped] >> PAGE_SHIFT == page) {
+                updateFastPath(mapped);
+            }
+        }
+    }
+}
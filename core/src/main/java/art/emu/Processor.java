@@ -1,7 +1,15 @@
 package art.emu;
 
+import java.nio.ByteBuffer;
+
 public class Processor {
-    private final Memory memory;
+    /**
+     * Bytes {@link #writeState(ByteBuffer)} takes: registers, program counter, stack pointer, flags, interrupt
+     * enable, halted and the pending interrupt
+     */
+    public static final int STATE_SIZE = 8 + 2 + 2 + 1 + 1 + 1 + 1;
+
+    private final MemoryBus memory;
     private final ConditionFlags conditionFlags;
     private final byte[] registers = new byte[8];
 
@@ -9,53 +17,96 @@ public class Processor {
     private int stackPointer;
 
     private boolean interruptsEnabled = false;
+    // vector of the RST the interrupting device is waiting to put on the bus
+    private int pendingInterrupt = NO_INTERRUPT;
+    // HLT keeps the program counter on itself, an interrupt resumes after it
+    private boolean halted;
     private HardwareIOExecutor hardwareIOExecutor;
 
+    private static final int NO_INTERRUPT = -1;
+    private static final int HLT_CYCLES = 7;
+    private static final int EI_OPCODE = Instruction.EI.getOpcode();
+
     public interface HardwareIOExecutor {
         void hardwareIN (Processor processor, int value);
         void hardwareOUT (Processor processor, int value);
     }
 
     public Processor () {
-        this.memory = new Memory(Memory.MAX_MEMORY);
-        this.conditionFlags = new ConditionFlags();
+        this(new ConditionFlags());
     }
 
     /**
-     * @return Cycles completed by this step
+     * @param conditionFlags {@link ConditionFlags} for eager flags, {@link LazyConditionFlags} to compute them on demand
+     */
+    public Processor (ConditionFlags conditionFlags) {
+        this(new MemoryBus(MemoryBus.MAX_MEMORY), conditionFlags);
+    }
+
+    /**
+     * @param memory address space layout of the machine, e.g. ROM with mirrored RAM
+     */
+    public Processor (MemoryBus memory, ConditionFlags conditionFlags) {
+        this.memory = memory;
+        this.conditionFlags = conditionFlags;
+    }
+
+    /**
+     * @return Cycles completed by this step, those of the HLT again while halted
      */
     public int step () {
+        if (halted) {
+            return HLT_CYCLES;
+        }
         int opcode = memory.readMemory(programCounter);
-        Instruction instruction = Instruction.fromOpcode(opcode);
-
-        switch (instruction) {
-            case IN:
-                int inValue = memory.readMemory(programCounter + 1);
-                hardwareIOExecutor.hardwareIN(this, inValue);
-                programCounter += 2;
-                return 10;
-            case OUT:
-                int outValue = memory.readMemory(programCounter + 1);
-                hardwareIOExecutor.hardwareOUT(this, outValue);
-                programCounter += 2;
-                return 10;
-            default:
-                 return instruction.execute(this);
+        int operand = Instruction.readOperand(memory, programCounter, opcode);
+        return Instruction.DISPATCH_TABLE[opcode].execute(this, operand);
+    }
+
+    /**
+     * Runs instructions until the budget is used up or a pending interrupt can be taken, with the cycle count in a
+     * local instead of a call and a sum per instruction at the caller. Halted it waits out the rest of the budget,
+     * nothing but an interrupt ends a HLT
+     * @return cycles completed, at least budget unless it stopped early
+     */
+    public int runCycles (int budget) {
+        final MemoryBus memory = this.memory;
+        final InstructionExecutor[] dispatchTable = Instruction.DISPATCH_TABLE;
+        int cycles = 0;
+        while (cycles < budget && !halted) {
+            int pc = programCounter;
+            int opcode = memory.readMemory(pc);
+            cycles += dispatchTable[opcode].execute(this, Instruction.readOperand(memory, pc, opcode));
+            // EI lets interrupts in only after the instruction that follows it
+            if (pendingInterrupt != NO_INTERRUPT && interruptsEnabled && opcode != EI_OPCODE) {
+                return cycles;
+            }
         }
+        return halted ? Math.max(cycles, budget) : cycles;
+    }
+
+    public int IN (int port) {
+        hardwareIOExecutor.hardwareIN(this, port);
+        programCounter += 2;
+        return 10;
+    }
+
+    public int OUT (int port) {
+        hardwareIOExecutor.hardwareOUT(this, port);
+        programCounter += 2;
+        return 10;
     }
 
+    // the stack pointer wraps at 16 bits like every other address
     public void pushStack (int value) {
-        if (stackPointer <= 0) {
-            throw new IllegalStateException("Stack overflow");
-        }
-        memory.writeMemory(--stackPointer, value & 0xFF);
+        stackPointer = (stackPointer - 1) & 0xFFFF;
+        memory.writeMemory(stackPointer, value & 0xFF);
     }
 
     public int popStack () {
-        if (stackPointer >= Memory.MAX_MEMORY) {
-            throw new IllegalStateException("Stack underflow");
-        }
-        return memory.readMemory(stackPointer++);
+        int value = memory.readMemory(stackPointer);
+        stackPointer = (stackPointer + 1) & 0xFFFF;
+        return value;
     }
 
     public int NOP () {
@@ -63,11 +114,7 @@ public class Processor {
         return 4;
     }
 
-    public int CALL () {
-        int loAdd = memory.readMemory(programCounter + 1);
-        int hiAdd = memory.readMemory(programCounter + 2);
-        int targetAddress = BitUtils.concatBytes(hiAdd, loAdd);
-
+    public int CALL (int targetAddress) {
         pushStack((programCounter + 3) >> 8);
         pushStack((programCounter + 3) & 0xFF);
 
@@ -102,11 +149,7 @@ public class Processor {
 
         writeRegisterValue(Registers.ACCUMULATOR, (byte) a);
 
-
-        setConditionBit(ConditionBits.CARRY, setCarry);
-        setConditionBit(ConditionBits.ZERO, (a == 0));
-        setConditionBit(ConditionBits.SIGN, (a & 0x80) != 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(a));
+        conditionFlags.setFromDecimalAdjust(a, setCarry);
 
         programCounter += 1;
 
@@ -138,20 +181,15 @@ public class Processor {
 
     public int ADD_REGISTER (int register) {
         int registerValue = getRegisterValue(register);
-        return ADD(registerValue);
+        return ADD(registerValue, 0);
     }
 
-    private int ADD (int value) {
+    // the carry goes in as a third operand, added to the operand first it would lose the aux carry out of its nibble
+    private int ADD (int value, int carry) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
-        int result = accumulatorValue + value;
+        conditionFlags.setFromAddition(accumulatorValue, value, carry);
 
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, result > 0xFF);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY,  BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulatorValue & 0x0F) + (value & 0x0F)) > 0x0F);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) (accumulatorValue + value + carry));
 
         programCounter += 1;
 
@@ -159,87 +197,58 @@ public class Processor {
     }
 
     public int ADD_M () {
-        int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int mValue = memory.readMemory(getM());
-
-        int result = accumulatorValue + mValue;
-
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, result > 0xFF);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY,  BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulatorValue & 0x0F) + (mValue & 0x0F)) > 0x0F);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
-
-        programCounter += 1;
+        ADD(mValue, 0);
         return 7;
     }
 
     public int ADC_REGISTER (int register) {
         int registerValue = getRegisterValue(register);
-        int addValue = isConditionBitSet(ConditionBits.CARRY) ? registerValue + 1 : registerValue;
-        ADD(addValue);
+        ADD(registerValue, carry());
         return 4;
     }
 
     public int ADC_M () {
         int mValue = memory.readMemory(getM());
-        int addValue = isConditionBitSet(ConditionBits.CARRY) ? mValue + 1 : mValue;
-        ADD(addValue);
+        ADD(mValue, carry());
         return 7;
     }
 
-    private void SUB (int value) {
-        int accumulator = getRegisterValue(Registers.ACCUMULATOR);
-        int result = accumulator - value;
+    private int carry () {
+        return conditionFlags.isFlagSet(ConditionBits.CARRY) ? 1 : 0;
+    }
 
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, accumulator < value);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulator & 0x0F) - (value & 0x0F)) < 0);
+    private void SUB (int value, int borrow) {
+        int accumulator = getRegisterValue(Registers.ACCUMULATOR);
+        conditionFlags.setFromSubtraction(accumulator, value, borrow);
 
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) (accumulator - value - borrow));
 
         programCounter += 1;
     }
 
     public int SUB_M () {
-        int accumulator = getRegisterValue(Registers.ACCUMULATOR);
         int value = memory.readMemory(getM());
-        int result = accumulator - value;
-
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, accumulator < value);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulator & 0x0F) - (value & 0x0F)) < 0);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
-
-        programCounter += 1;
+        SUB(value, 0);
         return 7;
     }
 
     public int SUB_REGISTER (int register) {
         int registerValue = getRegisterValue(register);
-        SUB(registerValue);
+        SUB(registerValue, 0);
 
         return 4;
     }
 
     public int SBB_M () {
         int mValue = memory.readMemory(getM());
-        int subValue = isConditionBitSet(ConditionBits.CARRY) ? mValue + 1 : mValue;
-        SUB(subValue);
+        SUB(mValue, carry());
         return 7;
     }
 
     public int SBB_REGISTER (int register) {
         int registerValue = getRegisterValue(register);
-        int subValue = isConditionBitSet(ConditionBits.CARRY) ? registerValue + 1 : registerValue;
-        SUB(subValue);
+        SUB(registerValue, carry());
         return 4;
     }
 
@@ -247,31 +256,15 @@ public class Processor {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int result = accumulatorValue & value;
 
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
+        conditionFlags.setFromLogic(result);
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
 
         programCounter += 1;
     }
 
     public int ANA_M () {
-        int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int value = memory.readMemory(getM());
-        int result = accumulatorValue & value;
-
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
-
-        programCounter += 1;
+        ANA(value);
         return 7;
     }
 
@@ -285,31 +278,15 @@ public class Processor {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int result = accumulatorValue ^ value;
 
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
+        conditionFlags.setFromLogic(result);
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
 
         programCounter += 1;
     }
 
     public int XRA_M () {
-        int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int value = memory.readMemory(getM());
-        int result = accumulatorValue ^ value;
-
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
-
-        programCounter += 1;
+        XRA(value);
         return 7;
     }
 
@@ -323,31 +300,15 @@ public class Processor {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int result = accumulatorValue | value;
 
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
+        conditionFlags.setFromLogic(result);
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
 
         programCounter += 1;
     }
 
     public int ORA_M () {
-        int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         int value = memory.readMemory(getM());
-        int result = accumulatorValue | value;
-
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
-
-        programCounter += 1;
+        ORA(value);
         return 7;
     }
 
@@ -359,29 +320,14 @@ public class Processor {
 
     public void CMP (int value) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
-        int result = accumulatorValue - value;
-
-        setConditionBit(ConditionBits.CARRY, accumulatorValue < value);
-        setConditionBit(ConditionBits.ZERO, accumulatorValue == value);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result & 0xFF));
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulatorValue & 0x0F) - (value & 0x0F)) < 0);
+        conditionFlags.setFromSubtraction(accumulatorValue, value);
 
         programCounter += 1;
     }
 
     public int CMP_M () {
         int mValue = memory.readMemory(getM());
-        int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
-        int result = accumulatorValue - mValue;
-
-        setConditionBit(ConditionBits.CARRY, accumulatorValue < mValue);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result & 0xFF));
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.AUX_CARRY, (accumulatorValue & 0x0F) < (mValue & 0x0F));
-
-        programCounter += 1;
+        CMP(mValue);
         return 7;
     }
 
@@ -411,26 +357,20 @@ public class Processor {
     }
 
     public int HLT () {
-        programCounter -= 1;
-        return 7;
+        halted = true;
+        return HLT_CYCLES;
     }
 
-    public int LXI_REG_DATA (int r1, int r2) {
-        int lsb = memory.readMemory(programCounter + 1);
-        int hsb = memory.readMemory(programCounter + 2);
-
-        writeRegisterValue(r1, (byte) (hsb & 0xFF));
-        writeRegisterValue(r2, (byte) (lsb & 0xFF));
+    public int LXI_REG_DATA (int r1, int r2, int data) {
+        writeRegisterValue(r1, (byte) (data >> 8));
+        writeRegisterValue(r2, (byte) data);
 
         programCounter += 3;
         return 10;
     }
 
-    public int LXI_SP_DATA () {
-        int lsb = memory.readMemory(programCounter + 1);
-        int hsb = memory.readMemory(programCounter + 2);
-
-        stackPointer = ((hsb & 0xFF) << 8) | (lsb & 0xFF);
+    public int LXI_SP_DATA (int data) {
+        stackPointer = data;
 
         programCounter += 3;
         return 10;
@@ -449,15 +389,10 @@ public class Processor {
         return 7;
     }
 
-    public int SHLD () {
+    public int SHLD (int memoryAddress) {
         int valueL = getRegisterValue(Registers.L);
         int valueH = getRegisterValue(Registers.H);
 
-        int lowAddr = memory.readMemory(programCounter + 1);
-        int highAddr = memory.readMemory(programCounter + 2);
-
-        int memoryAddress = BitUtils.concatBytes(highAddr, lowAddr);
-
         memory.writeMemory(memoryAddress, valueL);
         memory.writeMemory(memoryAddress + 1, valueH);
 
@@ -465,12 +400,7 @@ public class Processor {
         return 16;
     }
 
-    public int STA () {
-        int lowAddr = memory.readMemory(programCounter + 1);
-        int highAddr = memory.readMemory(programCounter + 2);
-
-        int writeAddress = BitUtils.concatBytes(highAddr, lowAddr);
-
+    public int STA (int writeAddress) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
         memory.writeMemory(writeAddress, accumulatorValue);
 
@@ -493,41 +423,27 @@ public class Processor {
     }
 
     public int INX_SP () {
-        stackPointer = (short) ((stackPointer + 1) & 0xFFFF);
+        stackPointer = (stackPointer + 1) & 0xFFFF;
         programCounter += 1;
         return 5;
     }
 
     public int INR_REG (int reg) {
         int currentValue = getRegisterValue(reg);
+        conditionFlags.setFromIncrement(currentValue);
 
-        int newValue = currentValue + 1;
-        setConditionBit(ConditionBits.SIGN, (newValue & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (newValue & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(newValue & 0xFF));
-        setConditionBit(ConditionBits.AUX_CARRY, ((currentValue & 0x0F) + 1) > 0x0F);
-
-        writeRegisterValue(reg, (byte) (newValue & 0xFF));
+        writeRegisterValue(reg, (byte) (currentValue + 1));
 
         programCounter += 1;
         return 5;
     }
 
     public int INR_MEM () {
-        int hValue = getRegisterValue(Registers.H);
-        int lValue = getRegisterValue(Registers.L);
-
-        int address = BitUtils.concatBytes(hValue, lValue);
+        int address = getM();
         int memValue = memory.readMemory(address);
+        conditionFlags.setFromIncrement(memValue);
 
-        int newValue = memValue + 1;
-
-        setConditionBit(ConditionBits.SIGN, (newValue & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (newValue & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(newValue & 0xFF));
-        setConditionBit(ConditionBits.AUX_CARRY, ((memValue & 0x0F) + 1) > 0x0F);
-
-        memory.writeMemory(address, newValue);
+        memory.writeMemory(address, (memValue + 1) & 0xFF);
 
         programCounter += 1;
         return 10;
@@ -535,50 +451,34 @@ public class Processor {
 
     public int DCR_REG (int reg) {
         int currentValue = getRegisterValue(reg);
+        conditionFlags.setFromDecrement(currentValue);
 
-        int newValue = currentValue - 1;
-        setConditionBit(ConditionBits.SIGN, (newValue & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (newValue & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(newValue & 0xFF));
-        setConditionBit(ConditionBits.AUX_CARRY, (currentValue & 0x0F) == 0);
-
-        writeRegisterValue(reg, (byte) (newValue & 0xFF));
+        writeRegisterValue(reg, (byte) (currentValue - 1));
 
         programCounter += 1;
         return 5;
     }
 
     public int DCR_MEM () {
-        int hValue = getRegisterValue(Registers.H);
-        int lValue = getRegisterValue(Registers.L);
-
-        int address = BitUtils.concatBytes(hValue, lValue);
+        int address = getM();
         int memValue = memory.readMemory(address);
+        conditionFlags.setFromDecrement(memValue);
 
-        int newValue = memValue - 1;
-
-        setConditionBit(ConditionBits.SIGN, (newValue & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (newValue & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(newValue & 0xFF));
-        setConditionBit(ConditionBits.AUX_CARRY, (memValue & 0x0F) == 0);
-
-        memory.writeMemory(address, newValue);
+        memory.writeMemory(address, (memValue - 1) & 0xFF);
 
         programCounter += 1;
         return 10;
     }
 
-    public int MVI_REG (int reg) {
-        int immediateValue = memory.readMemory(programCounter + 1);
+    public int MVI_REG (int reg, int immediateValue) {
         writeRegisterValue(reg, (byte) (immediateValue & 0xFF));
 
         programCounter += 2;
         return 7;
     }
 
-    public int MVI_MEM () {
+    public int MVI_MEM (int immediateValue) {
         int address = BitUtils.concatBytes(getRegisterValue(Registers.H), getRegisterValue(Registers.L));
-        int immediateValue = memory.readMemory(programCounter + 1);
         memory.writeMemory(address, immediateValue);
 
         programCounter += 2;
@@ -684,11 +584,7 @@ public class Processor {
         return 7;
     }
 
-    public int LHLD () {
-        int loAdd = memory.readMemory(programCounter + 1);
-        int hiAdd = memory.readMemory(programCounter + 2);
-
-        int lAddress = BitUtils.concatBytes(hiAdd, loAdd);
+    public int LHLD (int lAddress) {
         int hAddress = lAddress + 1;
 
         writeRegisterValue(Registers.L, (byte) memory.readMemory(lAddress));
@@ -697,11 +593,8 @@ public class Processor {
         return 16;
     }
 
-    public int LDA () {
-        int loAdd = memory.readMemory(programCounter + 1);
-        int hiAdd = memory.readMemory(programCounter + 2);
-
-        int value = memory.readMemory(BitUtils.concatBytes(hiAdd, loAdd));
+    public int LDA (int address) {
+        int value = memory.readMemory(address);
         writeRegisterValue(Registers.ACCUMULATOR, (byte) value);
 
         programCounter += 3;
@@ -722,8 +615,8 @@ public class Processor {
     }
 
     public int POP_REGS (int reg1, int reg2) {
-        int v2 = memory.readMemory(stackPointer++);
-        int v1 = memory.readMemory(stackPointer++);
+        int v2 = popStack();
+        int v1 = popStack();
 
         writeRegisterValue(reg2, (byte) v2);
         writeRegisterValue(reg1, (byte) v1);
@@ -747,8 +640,8 @@ public class Processor {
         int v1 = getRegisterValue(reg1);
         int v2 = getRegisterValue(reg2);
 
-        memory.writeMemory(--stackPointer, v1);
-        memory.writeMemory(--stackPointer, v2);
+        pushStack(v1);
+        pushStack(v2);
 
         programCounter += 1;
         return 11;
@@ -756,22 +649,19 @@ public class Processor {
 
     public int PUSH_PSW () {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
-        memory.writeMemory(stackPointer - 1, accumulatorValue);
+        pushStack(accumulatorValue);
 
         int bits = conditionFlags.getBits();
-        memory.writeMemory(stackPointer - 2, bits);
+        pushStack(bits);
 
-        stackPointer -= 2;
         programCounter += 1;
         return 11;
     }
 
 
-    public int JZ () {
+    public int JZ (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.ZERO)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
@@ -779,11 +669,9 @@ public class Processor {
         return 10;
     }
 
-    public int JNZ () {
+    public int JNZ (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.ZERO)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
@@ -807,41 +695,32 @@ public class Processor {
         return 5;
     }
 
-    public int JMP () {
-        int loAdd = memory.readMemory(programCounter + 1);
-        int hiAdd = memory.readMemory(programCounter + 2);
-
-        programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+    public int JMP (int address) {
+        programCounter = address;
         return 10;
     }
 
-    public int JC () {
+    public int JC (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.CARRY)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
         return 10;
     }
 
-    public int JNC () {
+    public int JNC (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.CARRY)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
         return 10;
     }
 
-    public int JM () {
+    public int JM (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.SIGN)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
@@ -849,42 +728,36 @@ public class Processor {
         return 10;
     }
 
-    public int JP () {
+    public int JP (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.SIGN)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
         return 10;
     }
 
-    public int JPE () {
+    public int JPE (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.PARITY)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
         return 10;
     }
 
-    public int JPO () {
+    public int JPO (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.PARITY)) {
-            int loAdd = memory.readMemory(programCounter + 1);
-            int hiAdd = memory.readMemory(programCounter + 2);
-            programCounter = BitUtils.concatBytes(hiAdd, loAdd);
+            programCounter = address;
         } else {
             programCounter += 3;
         }
         return 10;
     }
 
-    public int CC () {
+    public int CC (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.CARRY)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -892,9 +765,9 @@ public class Processor {
         }
     }
 
-    public int CNC () {
+    public int CNC (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.CARRY)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -902,9 +775,9 @@ public class Processor {
         }
     }
 
-    public int CZ () {
+    public int CZ (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.ZERO)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -912,9 +785,9 @@ public class Processor {
         }
     }
 
-    public int CNZ () {
+    public int CNZ (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.ZERO)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -922,9 +795,9 @@ public class Processor {
         }
     }
 
-    public int CM () {
+    public int CM (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.SIGN)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -932,9 +805,9 @@ public class Processor {
         }
     }
 
-    public int CP () {
+    public int CP (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.SIGN)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -942,9 +815,9 @@ public class Processor {
         }
     }
 
-    public int CPE () {
+    public int CPE (int address) {
         if (conditionFlags.isFlagSet(ConditionBits.PARITY)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -952,9 +825,9 @@ public class Processor {
         }
     }
 
-    public int CPO () {
+    public int CPO (int address) {
         if (!conditionFlags.isFlagSet(ConditionBits.PARITY)) {
-            CALL();
+            CALL(address);
             return 17;
         } else {
             programCounter += 3;
@@ -1051,6 +924,38 @@ public class Processor {
         return 11;
     }
 
+    /**
+     * Raises the interrupt line, the interrupt waits until {@link #acceptInterrupt()} takes it with interrupts
+     * enabled. A later request replaces one still waiting
+     * @param vector RST the device puts on the bus, 0 to 7
+     */
+    public void requestInterrupt (int vector) {
+        pendingInterrupt = vector;
+    }
+
+    public boolean isInterruptPending () {
+        return pendingInterrupt != NO_INTERRUPT;
+    }
+
+    /**
+     * Takes the pending interrupt if interrupts are enabled: turns further interrupts off until the next EI and runs
+     * the RST the device put on the bus
+     * @return cycles of the RST, 0 if no interrupt was taken
+     */
+    public int acceptInterrupt () {
+        if (pendingInterrupt == NO_INTERRUPT || !interruptsEnabled) {
+            return 0;
+        }
+        int vector = pendingInterrupt;
+        pendingInterrupt = NO_INTERRUPT;
+        interruptsEnabled = false;
+        if (halted) {
+            halted = false;
+            programCounter += 1;
+        }
+        return RST_VALUE(vector);
+    }
+
     public int XTHL () {
         int h = getRegisterValue(Registers.H);
         int l = getRegisterValue(Registers.L);
@@ -1098,8 +1003,7 @@ public class Processor {
         return 5;
     }
 
-    public int ADI () {
-        int immediate = memory.readMemory(programCounter + 1);
+    public int ADI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
         conditionFlags.setFromAddition(accumulatorValue, immediate);
@@ -1111,8 +1015,7 @@ public class Processor {
         return 7;
     }
 
-    public int SUI () {
-        int immediate = memory.readMemory(programCounter + 1);
+    public int SUI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
         conditionFlags.setFromSubtraction(accumulatorValue, immediate);
@@ -1124,105 +1027,71 @@ public class Processor {
         return 7;
     }
 
-    public int SBI () {
-        int immediate = memory.readMemory(programCounter + 1);
-        int cBit = conditionFlags.isFlagSet(ConditionBits.CARRY) ? 1 : 0;
-
-        int internalAdd = (immediate + cBit) & 0xFF;
+    public int SBI (int immediate) {
+        int borrow = carry();
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
-        conditionFlags.setFromSubtraction(accumulatorValue, internalAdd);
+        conditionFlags.setFromSubtraction(accumulatorValue, immediate, borrow);
 
-        int result = accumulatorValue - internalAdd;
+        int result = accumulatorValue - immediate - borrow;
         writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
 
         programCounter += 2;
         return 7;
     }
 
-    public int ACI () {
-        int immediate = memory.readMemory(programCounter + 1);
+    public int ACI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
-        int carryBitValue = conditionFlags.isFlagSet(ConditionBits.CARRY) ? 1 : 0;
-
-        int result = accumulatorValue + immediate + carryBitValue;
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
+        int carry = carry();
 
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, result > 0xFF);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY,  BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulatorValue & 0x0F) + (immediate + carryBitValue & 0x0F)) > 0x0F);
+        conditionFlags.setFromAddition(accumulatorValue, immediate, carry);
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) (accumulatorValue + immediate + carry));
 
         programCounter += 2;
         return 7;
     }
 
-    public int XRI () {
-        int immediate = memory.readMemory(programCounter + 1);
+    public int XRI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
         int result = accumulatorValue ^ immediate;
         writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
 
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY,  BitUtils.checkParity(result));
-        setConditionBit(ConditionBits.AUX_CARRY,  false);
+        conditionFlags.setFromLogic(result);
 
         programCounter += 2;
         return 7;
     }
 
-    public int CPI () {
-        int immediate = memory.readMemory(programCounter + 1);
+    public int CPI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
-        int result = accumulatorValue - immediate;
-
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.CARRY, immediate > accumulatorValue);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result & 0xFF));
-        setConditionBit(ConditionBits.AUX_CARRY, ((accumulatorValue & 0x0F) - (immediate & 0x0F)) < 0);
+        conditionFlags.setFromSubtraction(accumulatorValue, immediate);
 
         programCounter += 2;
         return 7;
     }
 
-    public int ANI () {
-        int immediate = memory.readMemory(programCounter + 1);
+    public int ANI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
         int result = accumulatorValue & immediate;
-        writeRegisterValue(Registers.ACCUMULATOR, (byte) (result & 0xFF));
+        writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
 
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result & 0xFF));
+        conditionFlags.setFromLogic(result);
 
         programCounter += 2;
         return 7;
     }
 
 
-    public int ORI () {
-        int immediate = memory.readMemory(programCounter + 1);
-
+    public int ORI (int immediate) {
         int accumulatorValue = getRegisterValue(Registers.ACCUMULATOR);
 
         int result = accumulatorValue | immediate;
-
         writeRegisterValue(Registers.ACCUMULATOR, (byte) result);
 
-        setConditionBit(ConditionBits.CARRY, false);
-        setConditionBit(ConditionBits.AUX_CARRY, false);
-        setConditionBit(ConditionBits.SIGN, (result & 0x80) != 0);
-        setConditionBit(ConditionBits.ZERO, (result & 0xFF) == 0);
-        setConditionBit(ConditionBits.PARITY, BitUtils.checkParity(result));
+        conditionFlags.setFromLogic(result);
 
         programCounter += 2;
         return 7;
@@ -1245,7 +1114,69 @@ public class Processor {
         return 5;
     }
 
-    public Memory getMemory () {
+    public int getProgramCounter () {
+        return programCounter;
+    }
+
+    public void setProgramCounter (int programCounter) {
+        this.programCounter = programCounter;
+        halted = false;
+    }
+
+    public boolean isHalted () {
+        return halted;
+    }
+
+    /**
+     * Writes everything but memory and the I/O handler, {@link #STATE_SIZE} bytes
+     */
+    public void writeState (ByteBuffer buffer) {
+        buffer.put(registers);
+        buffer.putShort((short) programCounter);
+        buffer.putShort((short) stackPointer);
+        buffer.put((byte) conditionFlags.getBits());
+        buffer.put((byte) (interruptsEnabled ? 1 : 0));
+        buffer.put((byte) (halted ? 1 : 0));
+        buffer.put((byte) pendingInterrupt);
+    }
+
+    public void readState (ByteBuffer buffer) {
+        buffer.get(registers);
+        programCounter = buffer.getShort() & 0xFFFF;
+        stackPointer = buffer.getShort() & 0xFFFF;
+        conditionFlags.setFromByte(buffer.get() & 0xFF);
+        interruptsEnabled = buffer.get() != 0;
+        halted = buffer.get() != 0;
+        pendingInterrupt = buffer.get(); // NO_INTERRUPT comes back as -1
+    }
+
+    /**
+     * Takes over the registers, flags and interrupt state of another processor, e.g. one on a forked bus. Memory and
+     * the I/O handler stay as they are
+     */
+    public void copyStateFrom (Processor other) {
+        System.arraycopy(other.registers, 0, registers, 0, registers.length);
+        programCounter = other.programCounter;
+        stackPointer = other.stackPointer;
+        conditionFlags.setFromByte(other.conditionFlags.getBits());
+        interruptsEnabled = other.interruptsEnabled;
+        halted = other.halted;
+        pendingInterrupt = other.pendingInterrupt;
+    }
+
+    public int getStackPointer () {
+        return stackPointer;
+    }
+
+    public void setStackPointer (int stackPointer) {
+        this.stackPointer = stackPointer;
+    }
+
+    public ConditionFlags getConditionFlags () {
+        return conditionFlags;
+    }
+
+    public MemoryBus getMemory () {
         return memory;
     }
 
@@ -0,0 +1,222 @@
+package art.emu;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The last saved states of a machine, one per frame, in a bounded amount of memory so the player can hold a key and
+ * go back frame by frame.
+ * Every {@code keyframeInterval} frames the whole state is stored, the frames in between as the XOR against that
+ * keyframe. From one frame to the next a game only changes a few hundred of its thousands of bytes, so the deltas are
+ * almost all zeros. Both are run length encoded: a count of unchanged (zero) bytes, a count of changed ones, then
+ * those.
+ * Any frame decodes from its keyframe and its own delta alone. Once the buffer holds more than its cap the oldest
+ * keyframe is dropped together with the deltas that depend on it, the frames since the newest keyframe always stay
+ */
+public class RewindBuffer {
+    // what a stored frame costs on top of its data: the entry, the array header, the deque slot
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private static final class Entry {
+        final boolean keyframe;
+        final byte[] data;
+
+        Entry (boolean keyframe, byte[] data) {
+            this.keyframe = keyframe;
+            this.data = data;
+        }
+    }
+
+    private final int stateSize;
+    private final int keyframeInterval;
+    private final long maxBytes;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // keyframe the newest deltas are against, zeros encode a keyframe itself
+    private final byte[] keyframe;
+    private final byte[] zeros;
+    private final byte[] scratch;
+    private int deltasSinceKeyframe;
+    private int keyframes;
+    private long bytesUsed;
+
+    private long pushes;
+    private long evictions;
+    private long encodedBytes;
+
+    /**
+     * @param stateSize bytes of every state
+     * @param keyframeInterval frames from one keyframe to the next, longer intervals mean bigger deltas
+     * @param maxBytes memory the stored frames may take, the oldest are dropped beyond that
+     */
+    public RewindBuffer (int stateSize, int keyframeInterval, long maxBytes) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1: " + keyframeInterval);
+        }
+        this.stateSize = stateSize;
+        this.keyframeInterval = keyframeInterval;
+        this.maxBytes = maxBytes;
+        keyframe = new byte[stateSize];
+        zeros = new byte[stateSize];
+        // runs of changed bytes only end on two unchanged ones, so the counts never take more than they save
+        scratch = new byte[stateSize * 2 + 16];
+    }
+
+    /**
+     * Stores the state of the frame that just ran as the newest one
+     */
+    public void push (byte[] state) {
+        boolean isKeyframe = entries.isEmpty() || deltasSinceKeyframe >= keyframeInterval - 1;
+        byte[] data;
+        if (isKeyframe) {
+            data = encode(state, zeros);
+            System.arraycopy(state, 0, keyframe, 0, stateSize);
+            deltasSinceKeyframe = 0;
+            keyframes++;
+        } else {
+            data = encode(state, keyframe);
+            deltasSinceKeyframe++;
+        }
+        entries.addLast(new Entry(isKeyframe, data));
+        bytesUsed += data.length + ENTRY_OVERHEAD;
+        pushes++;
+        encodedBytes += data.length;
+
+        while (bytesUsed > maxBytes && keyframes > 1) {
+            evictOldestKeyframe();
+        }
+    }
+
+    /**
+     * Takes the newest state out of the buffer
+     * @return false if there is none left
+     */
+    public boolean pop (byte[] into) {
+        Entry newest = entries.pollLast();
+        if (newest == null) {
+            return false;
+        }
+        bytesUsed -= newest.data.length + ENTRY_OVERHEAD;
+        if (newest.keyframe) {
+            decode(newest.data, zeros, into);
+            keyframes--;
+            findKeyframe();
+        } else {
+            decode(newest.data, keyframe, into);
+            deltasSinceKeyframe--;
+        }
+        return true;
+    }
+
+    public void clear () {
+        entries.clear();
+        deltasSinceKeyframe = 0;
+        keyframes = 0;
+        bytesUsed = 0;
+    }
+
+    private void evictOldestKeyframe () {
+        do {
+            bytesUsed -= entries.pollFirst().data.length + ENTRY_OVERHEAD;
+            evictions++;
+        } while (!entries.peekFirst().keyframe);
+        keyframes--;
+    }
+
+    // the newest keyframe left after one was popped, decoded for the deltas that follow it
+    private void findKeyframe () {
+        deltasSinceKeyframe = 0;
+        for (Iterator<Entry> iterator = entries.descendingIterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.keyframe) {
+                decode(entry.data, zeros, keyframe);
+                return;
+            }
+            deltasSinceKeyframe++;
+        }
+    }
+
+    private byte[] encode (byte[] state, byte[] reference) {
+        int length = 0;
+        int i = 0;
+        while (i < stateSize) {
+            int unchanged = i;
+            while (unchanged < stateSize && state[unchanged] == reference[unchanged]) {
+                unchanged++;
+            }
+            int changed = unchanged;
+            // two equal bytes in a row are worth a new run, a single one is cheaper kept as a changed byte
+            while (changed < stateSize && (state[changed] != reference[changed]
+                || changed + 1 < stateSize && state[changed + 1] != reference[changed + 1])) {
+                changed++;
+            }
+            length = putCount(unchanged - i, length);
+            length = putCount(changed - unchanged, length);
+            for (int j = unchanged; j < changed; j++) {
+                scratch[length++] = (byte) (state[j] ^ reference[j]);
+            }
+            i = changed;
+        }
+        return Arrays.copyOf(scratch, length);
+    }
+
+    private void decode (byte[] data, byte[] reference, byte[] into) {
+        System.arraycopy(reference, 0, into, 0, stateSize);
+        int position = 0;
+        int i = 0;
+        while (position < data.length) {
+            int unchanged = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data[position++];
+                unchanged |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            int changed = 0;
+            shift = 0;
+            do {
+                b = data[position++];
+                changed |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            i += unchanged;
+            for (int end = i + changed; i < end; i++) {
+                into[i] ^= data[position++];
+            }
+        }
+    }
+
+    // 7 bits a byte, the high bit set on all but the last
+    private int putCount (int count, int at) {
+        while (count >= 0x80) {
+            scratch[at++] = (byte) (count | 0x80);
+            count >>>= 7;
+        }
+        scratch[at++] = (byte) count;
+        return at;
+    }
+
+    /**
+     * @return frames that can be popped
+     */
+    public int size () {
+        return entries.size();
+    }
+
+    public long getBytesUsed () {
+        return bytesUsed;
+    }
+
+    public long getMaxBytes () {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString () {
+        return "RewindBuffer[frames=" + entries.size() + ", bytes=" + bytesUsed + "/" + maxBytes + ", pushes=" + pushes
+            + ", evictions=" + evictions + ", averageBytes=" + (pushes == 0 ? 0 : encodedBytes / pushes) + "]";
+    }
+}
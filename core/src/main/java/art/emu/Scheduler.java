@@ -0,0 +1,148 @@
+package art.emu;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Global cycle counter with the timed events of a machine (interrupts, timers, sound), the CPU runs in one go up to
+ * the next deadline and the events fire once the counter has reached it.
+ * Deadlines are absolute, so cycles an instruction runs past a deadline are carried over instead of lost and
+ * periodic events rescheduled from their deadline never drift.
+ * Entries of fired events are kept and reused, so a machine whose events reschedule themselves runs without
+ * allocating
+ */
+public class Scheduler {
+    public interface Event {
+        /**
+         * @param deadline cycle the event was due at, the counter may already be a few cycles past it
+         */
+        void fire (long deadline);
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        long deadline;
+        long order;
+        Event event;
+        Entry nextFree;
+
+        @Override
+        public int compareTo (Entry other) {
+            if (deadline != other.deadline) {
+                return deadline < other.deadline ? -1 : 1;
+            }
+            // events due at the same cycle fire in the order they were scheduled
+            return Long.compare(order, other.order);
+        }
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private long cycle;
+    private long scheduled;
+    private Entry free; // entries no longer in the queue, chained through nextFree
+
+    public long getCycle () {
+        return cycle;
+    }
+
+    /**
+     * @param deadline absolute cycle, events already due fire on the next {@link #fireDue()}
+     */
+    public void schedule (long deadline, Event event) {
+        Entry entry = free;
+        if (entry != null) {
+            free = entry.nextFree;
+            entry.nextFree = null;
+        } else {
+            entry = new Entry();
+        }
+        entry.deadline = deadline;
+        entry.order = scheduled++;
+        entry.event = event;
+        queue.add(entry);
+    }
+
+    private void release (Entry entry) {
+        entry.event = null;
+        entry.nextFree = free;
+        free = entry;
+    }
+
+    public void scheduleIn (long cycles, Event event) {
+        schedule(cycle + cycles, event);
+    }
+
+    /**
+     * Drops every pending occurrence of the event
+     */
+    public void cancel (Event event) {
+        for (Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.event == event) {
+                iterator.remove();
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * @return earliest deadline the event is scheduled for, {@link Long#MAX_VALUE} if it isn't
+     */
+    public long deadlineOf (Event event) {
+        long deadline = Long.MAX_VALUE;
+        for (Entry entry : queue) {
+            if (entry.event == event) {
+                deadline = Math.min(deadline, entry.deadline);
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Sets the counter and drops every event, for loading a saved state that schedules its events again
+     */
+    public void reset (long cycle) {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            release(entry);
+        }
+        this.cycle = cycle;
+    }
+
+    /**
+     * @return deadline of the next event, {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    public long nextDeadline () {
+        Entry next = queue.peek();
+        return next == null ? Long.MAX_VALUE : next.deadline;
+    }
+
+    /**
+     * @return entries kept for reuse
+     */
+    int freeEntries () {
+        int count = 0;
+        for (Entry entry = free; entry != null; entry = entry.nextFree) {
+            count++;
+        }
+        return count;
+    }
+
+    public void advance (int cycles) {
+        cycle += cycles;
+    }
+
+    /**
+     * Fires the events that are due in deadline order, including the ones they schedule that are due already
+     */
+    public void fireDue () {
+        Entry next;
+        while ((next = queue.peek()) != null && next.deadline <= cycle) {
+            queue.poll();
+            Event event = next.event;
+            long deadline = next.deadline;
+            // released first, the event usually schedules its next occurrence right away
+            release(next);
+            event.fire(deadline);
+        }
+    }
+}
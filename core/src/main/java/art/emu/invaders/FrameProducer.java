@@ -0,0 +1,30 @@
+package art.emu.invaders;
+
+import art.emu.invaders.SpaceInvadersMachine.Input;
+
+/**
+ * Runs a {@link SpaceInvadersMachine} off the render thread and hands finished frames over to it.
+ * Everything but {@link #start} is called from the render thread
+ */
+public interface FrameProducer {
+    /**
+     * Starts running the machine at 60 frames a second, from now on only the producer touches it
+     */
+    void start (SpaceInvadersMachine machine);
+
+    /**
+     * Queues an input change, the machine sees it at the start of its next frame
+     */
+    void setInput (Input input, boolean pressed);
+
+    /**
+     * @return video RAM of the newest finished frame, {@link SpaceInvadersMachine#V_RAM_SIZE} bytes, or null if no
+     * frame finished since the last call. Only valid until the next call
+     */
+    byte[] latestFrame ();
+
+    /**
+     * Stops the machine and waits for it
+     */
+    void stop ();
+}
@@ -0,0 +1,213 @@
+package art.emu.invaders;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The inputs of a session frame by frame, as {@link SpaceInvadersMachine#getInputs()} had them when the frame ran,
+ * so playing them back on a machine from the same starting point runs the exact same game. Only the frames the
+ * inputs changed on are stored. The video RAM hash after every frame can go along to check a replay with.
+ * <p>
+ * Saved as {@link #MAGIC} and {@link #VERSION}, the frame count, the number of changes and whether there are
+ * hashes, then per change the frames since the one before as 7 bits a byte and the two input ports, then the hashes
+ */
+public class InputMovie {
+    /**
+     * "SIMV" at the start of every saved movie
+     */
+    public static final int MAGIC = 0x53494D56;
+    public static final int VERSION = 1;
+
+    private final boolean withHashes;
+    private int frameCount;
+    // frames the inputs changed on and what they changed to, frame 0 always has one
+    private int[] changeFrames = new int[64];
+    private int[] changeInputs = new int[64];
+    private int changeCount;
+    private int[] vramHashes;
+
+    /**
+     * @param withHashes record the video RAM hash of every frame as well, 4 bytes a frame
+     */
+    public InputMovie (boolean withHashes) {
+        this.withHashes = withHashes;
+        vramHashes = new int[withHashes ? 3600 : 0];
+    }
+
+    /**
+     * Adds the next frame
+     * @param inputs what the frame ran with
+     * @param vramHash {@link SpaceInvadersMachine#hashVram()} after it ran, ignored without hashes
+     */
+    public void record (int inputs, int vramHash) {
+        if (changeCount == 0 || changeInputs[changeCount - 1] != inputs) {
+            if (changeCount == changeFrames.length) {
+                changeFrames = Arrays.copyOf(changeFrames, changeCount * 2);
+                changeInputs = Arrays.copyOf(changeInputs, changeCount * 2);
+            }
+            changeFrames[changeCount] = frameCount;
+            changeInputs[changeCount] = inputs;
+            changeCount++;
+        }
+        if (withHashes) {
+            if (frameCount == vramHashes.length) {
+                vramHashes = Arrays.copyOf(vramHashes, frameCount * 2);
+            }
+            vramHashes[frameCount] = vramHash;
+        }
+        frameCount++;
+    }
+
+    /**
+     * Drops every frame from this one on, e.g. the frames a rewind went back over
+     */
+    public void truncate (int frames) {
+        if (frames >= frameCount) {
+            return;
+        }
+        frameCount = Math.max(frames, 0);
+        while (changeCount > 0 && changeFrames[changeCount - 1] >= frameCount) {
+            changeCount--;
+        }
+    }
+
+    /**
+     * @return inputs to run the frame with
+     */
+    public int getInputs (int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        int index = Arrays.binarySearch(changeFrames, 0, changeCount, frame);
+        // not found gives -(insertion point) - 1, the change before the insertion point is the one in effect
+        return changeInputs[index >= 0 ? index : -index - 2];
+    }
+
+    public boolean hasVramHashes () {
+        return withHashes;
+    }
+
+    /**
+     * @return the video RAM hash recorded after the frame ran
+     */
+    public int getVramHash (int frame) {
+        if (!withHashes || frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("No hash for frame " + frame);
+        }
+        return vramHashes[frame];
+    }
+
+    public int getFrameCount () {
+        return frameCount;
+    }
+
+    /**
+     * @return bytes {@link #write(ByteBuffer)} takes
+     */
+    public int getByteSize () {
+        int size = 4 + 4 + 4 + 4 + 1;
+        int previous = 0;
+        for (int i = 0; i < changeCount; i++) {
+            size += countSize(changeFrames[i] - previous) + 2;
+            previous = changeFrames[i];
+        }
+        return size + (withHashes ? frameCount * 4 : 0);
+    }
+
+    public void write (ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(frameCount);
+        buffer.putInt(changeCount);
+        buffer.put((byte) (withHashes ? 1 : 0));
+        int previous = 0;
+        for (int i = 0; i < changeCount; i++) {
+            putCount(buffer, changeFrames[i] - previous);
+            buffer.put((byte) changeInputs[i]);
+            buffer.put((byte) (changeInputs[i] >> 8));
+            previous = changeFrames[i];
+        }
+        if (withHashes) {
+            for (int i = 0; i < frameCount; i++) {
+                buffer.putInt(vramHashes[i]);
+            }
+        }
+    }
+
+    public byte[] toBytes () {
+        byte[] bytes = new byte[getByteSize()];
+        write(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * @throws IllegalArgumentException if it isn't a movie of this version
+     */
+    public static InputMovie read (ByteBuffer buffer) {
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IllegalArgumentException("Not a version " + VERSION + " Space Invaders movie, magic 0x"
+                + Integer.toHexString(magic) + " version " + version);
+        }
+        int frameCount = buffer.getInt();
+        int changeCount = buffer.getInt();
+        InputMovie movie = new InputMovie(buffer.get() != 0);
+        movie.frameCount = frameCount;
+        movie.changeCount = changeCount;
+        movie.changeFrames = new int[Math.max(changeCount, 1)];
+        movie.changeInputs = new int[Math.max(changeCount, 1)];
+        int frame = 0;
+        for (int i = 0; i < changeCount; i++) {
+            frame += getCount(buffer);
+            movie.changeFrames[i] = frame;
+            movie.changeInputs[i] = (buffer.get() & 0xFF) | (buffer.get() & 0xFF) << 8;
+        }
+        if (movie.withHashes) {
+            movie.vramHashes = new int[Math.max(frameCount, 1)];
+            for (int i = 0; i < frameCount; i++) {
+                movie.vramHashes[i] = buffer.getInt();
+            }
+        }
+        return movie;
+    }
+
+    public static InputMovie read (byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    // 7 bits a byte, the high bit set on all but the last
+    private static void putCount (ByteBuffer buffer, int count) {
+        while (count >= 0x80) {
+            buffer.put((byte) (count | 0x80));
+            count >>>= 7;
+        }
+        buffer.put((byte) count);
+    }
+
+    private static int getCount (ByteBuffer buffer) {
+        int count = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get();
+            count |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return count;
+    }
+
+    private static int countSize (int count) {
+        int size = 1;
+        while (count >= 0x80) {
+            count >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public String toString () {
+        return "InputMovie[frames=" + frameCount + ", changes=" + changeCount + ", hashes=" + withHashes + "]";
+    }
+}
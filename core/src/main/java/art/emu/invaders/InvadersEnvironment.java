@@ -0,0 +1,234 @@
+package art.emu.invaders;
+
+import art.emu.BlockCompiler;
+import art.emu.MemoryBus;
+import art.emu.invaders.SpaceInvadersMachine.Input;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Space Invaders as a reinforcement learning environment in the style of Gym: {@link #reset()} starts a one player
+ * game, {@link #step(int, int)} holds one of {@link #ACTION_COUNT} actions for some frames and reports the points
+ * scored, the ships left and whether the game is over. Everything is read from the game's RAM, nothing goes through
+ * the display or Gdx.
+ * Nothing is allocated per step: {@link Step} is one object that every call updates, the video RAM is handed out as
+ * the machine's own array and the grayscale picture is drawn into a buffer made once
+ */
+public class InvadersEnvironment {
+    public static final int NOOP = 0, FIRE = 1, RIGHT = 2, LEFT = 3, RIGHT_FIRE = 4, LEFT_FIRE = 5;
+    public static final int ACTION_COUNT = 6;
+
+    /**
+     * Size of {@link Step#getGrayscale()}, the upright screen at half resolution
+     */
+    public static final int GRAY_WIDTH = VramConverter.HEIGHT / 2, GRAY_HEIGHT = VramConverter.WIDTH / 2;
+
+    private static final int[] ACTION_INPUTS = {
+        0,
+        Input.SHOT_1P.mask(),
+        Input.RIGHT_1P.mask(),
+        Input.LEFT_1P.mask(),
+        Input.RIGHT_1P.mask() | Input.SHOT_1P.mask(),
+        Input.LEFT_1P.mask() | Input.SHOT_1P.mask(),
+    };
+
+    // 1 while a game runs, 0 in attract mode
+    private static final int GAME_MODE = 0x20EF;
+    // the score has four BCD digits
+    private static final int SCORE_LIMIT = 10000;
+
+    // when the coin drops and start is pressed after power on, the game has booted by then
+    private static final int CREDIT_FRAME = 120, START_FRAME = 240, PRESS_FRAMES = 6;
+    private static final int MAX_START_FRAMES = 1000;
+
+    // lit pixels of the bit pairs 0-1, 2-3, 4-5 and 6-7 of every byte value, a byte each
+    private static final int[] PAIR_COUNTS = new int[256];
+
+    static {
+        for (int value = 0; value < 256; value++) {
+            for (int pair = 0; pair < 4; pair++) {
+                PAIR_COUNTS[value] |= Integer.bitCount((value >> (pair * 2)) & 3) << (pair * 8);
+            }
+        }
+    }
+
+    /**
+     * What the last {@link #reset()} or {@link #step(int, int)} left the game in, the same object every time
+     */
+    public final class Step {
+        private int reward;
+        private boolean done;
+        private int frames;
+        private long grayscaleFrame = -1;
+
+        private Step () {
+        }
+
+        /**
+         * @return points scored during the step, 0 after a reset
+         */
+        public int getReward () {
+            return reward;
+        }
+
+        /**
+         * @return ships player 1 has in reserve besides the one in play, see {@link SpaceInvadersMachine#getShips()}
+         */
+        public int getLives () {
+            return machine.getShips();
+        }
+
+        /**
+         * @return true once the game is over, the environment has to be reset before stepping on
+         */
+        public boolean isDone () {
+            return done;
+        }
+
+        /**
+         * @return frames since the last reset
+         */
+        public int getFrames () {
+            return frames;
+        }
+
+        /**
+         * @return player 1's score, see {@link SpaceInvadersMachine#getScore()}
+         */
+        public int getScore () {
+            return machine.getScore();
+        }
+
+        /**
+         * @return the machine's video RAM itself, packed 1 bit per pixel from {@link #getVramOffset()} in the layout
+         * {@link VramConverter} reads. It changes as the game runs, copy it to keep it
+         */
+        public byte[] getVram () {
+            return vram;
+        }
+
+        /**
+         * @return index of {@link SpaceInvadersMachine#V_RAM_START} in {@link #getVram()}
+         */
+        public int getVramOffset () {
+            return vramOffset;
+        }
+
+        /**
+         * @return the upright screen, {@link #GRAY_WIDTH} by {@link #GRAY_HEIGHT} bytes top row first, every byte the
+         * share of the 2 by 2 pixels under it that are lit from 0 to 255. Drawn the first time it is asked for after
+         * a step, into the same array every time
+         */
+        public byte[] getGrayscale () {
+            if (grayscaleFrame != frames) {
+                drawGrayscale();
+                grayscaleFrame = frames;
+            }
+            return grayscale;
+        }
+    }
+
+    private final SpaceInvadersMachine machine;
+    private final Step step = new Step();
+    private final ByteBuffer startState = ByteBuffer.allocate(SpaceInvadersMachine.STATE_SIZE);
+    private final byte[] vram;
+    private final int vramOffset;
+    private final byte[] grayscale = new byte[GRAY_WIDTH * GRAY_HEIGHT];
+    private int score;
+
+    /**
+     * Boots a machine and plays up to the start of a one player game, every reset goes back there
+     * @param blockCompiler compiler for hot blocks, null to only interpret
+     * @throws IllegalStateException if the ROMs never start a game
+     */
+    public InvadersEnvironment (RomImage rom, BlockCompiler blockCompiler) {
+        machine = new SpaceInvadersMachine(rom, blockCompiler);
+        MemoryBus memory = machine.getProcessor().getMemory();
+        vram = memory.readArray(SpaceInvadersMachine.V_RAM_START);
+        vramOffset = memory.readOffset(SpaceInvadersMachine.V_RAM_START);
+
+        int frame = 0;
+        while (!gameRunning() || machine.getShips() == 0) {
+            if (frame == MAX_START_FRAMES) {
+                throw new IllegalStateException("No game started after " + MAX_START_FRAMES + " frames");
+            }
+            machine.setInput(Input.CREDIT, frame >= CREDIT_FRAME && frame < CREDIT_FRAME + PRESS_FRAMES);
+            machine.setInput(Input.START_1P, frame >= START_FRAME && frame < START_FRAME + PRESS_FRAMES);
+            machine.runFrame();
+            frame++;
+        }
+        machine.setInputs(0);
+        machine.saveState(startState);
+        reset();
+    }
+
+    private boolean gameRunning () {
+        return machine.getProcessor().getMemory().readMapped(GAME_MODE) != 0;
+    }
+
+    /**
+     * Goes back to the start of the game
+     */
+    public Step reset () {
+        startState.rewind();
+        machine.loadState(startState);
+        score = machine.getScore();
+        step.reward = 0;
+        step.done = false;
+        step.frames = 0;
+        step.grayscaleFrame = -1;
+        return step;
+    }
+
+    /**
+     * Holds the action for the given frames, or until the game is over
+     * @param action one of {@link #NOOP} to {@link #LEFT_FIRE}
+     * @throws IllegalStateException if the game is already over
+     */
+    public Step step (int action, int frameSkip) {
+        if (step.done) {
+            throw new IllegalStateException("The game is over, reset first");
+        }
+        machine.setInputs(ACTION_INPUTS[action]);
+        int reward = 0;
+        for (int i = 0; i < frameSkip && !step.done; i++) {
+            machine.runFrame();
+            step.frames++;
+            int newScore = machine.getScore();
+            reward += (newScore - score + SCORE_LIMIT) % SCORE_LIMIT;
+            score = newScore;
+            step.done = !gameRunning();
+        }
+        step.reward = reward;
+        return step;
+    }
+
+    /**
+     * @return the last step, what {@link #reset()} and {@link #step(int, int)} return
+     */
+    public Step getStep () {
+        return step;
+    }
+
+    /**
+     * @return the machine the game runs on. Forking it moves its RAM out from under {@link Step#getVram()}
+     */
+    public SpaceInvadersMachine getMachine () {
+        return machine;
+    }
+
+    // video RAM holds 224 lines of 256 pixels from the bottom of the screen up, the lines go left to right
+    private void drawGrayscale () {
+        for (int column = 0; column < GRAY_WIDTH; column++) {
+            int left = vramOffset + column * 2 * VramConverter.BYTES_PER_LINE;
+            int right = left + VramConverter.BYTES_PER_LINE;
+            for (int b = 0; b < VramConverter.BYTES_PER_LINE; b++) {
+                int counts = PAIR_COUNTS[vram[left + b] & 0xFF] + PAIR_COUNTS[vram[right + b] & 0xFF];
+                for (int pair = 0; pair < 4; pair++) {
+                    int row = GRAY_HEIGHT - 1 - (b * 4 + pair);
+                    grayscale[row * GRAY_WIDTH + column] = (byte) (((counts >> (pair * 8)) & 0xFF) * 255 / 4);
+                }
+            }
+        }
+    }
+}
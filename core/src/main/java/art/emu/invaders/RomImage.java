@@ -0,0 +1,58 @@
+package art.emu.invaders;
+
+/**
+ * The four ROM files put together once, size checked and compared against the known dump, for any number of
+ * machines to share. Nothing writes to it after {@link #of(byte[]...)}, the machines map it read only
+ */
+public final class RomImage {
+    // CRC-32 of invaders.h to invaders.e of the common Midway set
+    private static final int[] KNOWN_CRCS = { 0x734F5AD8, 0x6BFACA4A, 0x0CCEAD96, 0x14E538B0 };
+
+    final byte[] bytes;
+    private final boolean knownDump;
+
+    private RomImage (byte[] bytes, boolean knownDump) {
+        this.bytes = bytes;
+        this.knownDump = knownDump;
+    }
+
+    /**
+     * @param files contents of {@link SpaceInvadersMachine#ROM_FILES} in that order, copied
+     * @throws IllegalArgumentException if a file is missing or too big
+     */
+    public static RomImage of (byte[]... files) {
+        if (files.length != SpaceInvadersMachine.ROM_FILES.length) {
+            throw new IllegalArgumentException("Expected " + SpaceInvadersMachine.ROM_FILES.length + " ROM files, got "
+                + files.length);
+        }
+        byte[] bytes = new byte[SpaceInvadersMachine.ROM_SIZE];
+        boolean knownDump = true;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].length > SpaceInvadersMachine.ROM_FILE_SIZE) {
+                throw new IllegalArgumentException(SpaceInvadersMachine.ROM_FILES[i] + " is " + files[i].length
+                    + " bytes, expected " + SpaceInvadersMachine.ROM_FILE_SIZE);
+            }
+            System.arraycopy(files[i], 0, bytes, i * SpaceInvadersMachine.ROM_FILE_SIZE, files[i].length);
+            knownDump &= crc32(files[i]) == KNOWN_CRCS[i];
+        }
+        return new RomImage(bytes, knownDump);
+    }
+
+    private static int crc32 (byte[] data) {
+        int crc = 0xFFFFFFFF;
+        for (byte b : data) {
+            crc ^= b & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc >>> 1) ^ (0xEDB88320 & -(crc & 1));
+            }
+        }
+        return ~crc;
+    }
+
+    /**
+     * @return true if every file matches the dump the emulator is tested with, other sets may still run
+     */
+    public boolean isKnownDump () {
+        return knownDump;
+    }
+}
@@ -1,51 +1,78 @@
 package art.emu.invaders;
 
-import art.emu.Memory;
-import art.emu.Processor;
-import art.emu.Registers;
+import art.emu.BlockCache;
+import art.emu.BlockCompiler;
+import art.emu.RewindBuffer;
+import art.emu.invaders.SpaceInvadersMachine.Input;
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.Input;
+import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.InputAdapter;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.Disposable;
 
-public class SpaceInvaders extends InputAdapter implements Disposable {
-    private final int[] ports = new int[8];
-
-    // dedicated shift register
-    private int shift0, shift1, shiftOffset;
+import java.nio.ByteBuffer;
 
-    private final Processor processor;
+public class SpaceInvaders extends InputAdapter implements Disposable {
+    private final SpaceInvadersMachine machine;
     private final SpaceInvadersDisplay display;
-
-    public static final int V_RAM_START = 0x2400, V_RAM_END = 0x3FFF;
-
-    private static final int CPU_FREQ = 2_000_000;   // 2 MHz
-    private static final int CYCLES_PER_FRAME = CPU_FREQ / 60;        // ≈33 333
-    private static final int HALF_FRAME_CYCLES = CYCLES_PER_FRAME / 2; // ≈16 666
+    private final FrameProducer frameProducer;
+    private final RewindBuffer rewindBuffer;
+    private final int runAheadFrames;
+    private final byte[] state = new byte[SpaceInvadersMachine.STATE_SIZE];
+    private final ByteBuffer stateBuffer = ByteBuffer.wrap(state);
+    private final byte[] aheadState = new byte[SpaceInvadersMachine.STATE_SIZE];
+    private final ByteBuffer aheadStateBuffer = ByteBuffer.wrap(aheadState);
+    private final byte[] aheadFrame = new byte[SpaceInvadersMachine.V_RAM_SIZE];
+    private final FileHandle movieFile;
+    private final InputMovie movie;
+    // keys change these between frames, every frame runs with them as they were when it started
+    private int inputs;
+    private int frame;
+    private boolean rewinding;
+
+    private long runAheadNanos;
+    private long runAheadCount;
 
     public SpaceInvaders () {
-        processor = new Processor();
-        processor.setHardwareIOExecutor(new Processor.HardwareIOExecutor() {
-            @Override
-            public void hardwareIN (Processor processor, int port) {
-                processor.writeRegisterValue(Registers.ACCUMULATOR, (byte) readPort(port));
-            }
-            @Override
-            public void hardwareOUT (Processor processor, int port) {
-                writePort(port, processor.getRegisterValue(Registers.ACCUMULATOR));
-            }
-        });
+        this(null, null, null, 0, null);
+    }
 
+    /**
+     * @param blockCompiler compiler for hot blocks, null to only interpret
+     * @param frameProducer runs the machine on another thread, null to run it in {@link #render(float)}
+     * @param rewindBuffer keeps the last frames to go back to while backspace is held, null to not rewind. Only
+     * without a frame producer, the machine isn't ours to save and load then
+     * @param runAheadFrames frames to run ahead of the real one and show instead of it, 0 to show the real one. The
+     * game reads its inputs at a fixed point of the frame and then takes a frame or two to show the effect, run-ahead
+     * hides that much of the lag. Also only without a frame producer
+     * @param movieFile file to record an {@link InputMovie} with video RAM hashes to on exit, null to not record.
+     * Frames rewound over are dropped from it. Also only without a frame producer
+     */
+    public SpaceInvaders (BlockCompiler blockCompiler, FrameProducer frameProducer, RewindBuffer rewindBuffer,
+        int runAheadFrames, FileHandle movieFile) {
+        machine = new SpaceInvadersMachine(blockCompiler);
         display = new SpaceInvadersDisplay();
-        loadGameRom(processor);
+        this.frameProducer = frameProducer;
+        this.rewindBuffer = frameProducer == null ? rewindBuffer : null;
+        this.runAheadFrames = frameProducer == null ? runAheadFrames : 0;
+        this.movieFile = frameProducer == null ? movieFile : null;
+        movie = this.movieFile != null ? new InputMovie(true) : null;
+        loadGameRom();
         Gdx.input.setInputProcessor(this);
+        if (frameProducer != null) {
+            frameProducer.start(machine);
+        }
     }
 
     private static final float FRAME_TIME = 1f/60f;
     private float accumulator = 0f;
 
     public void render(float delta) {
+        if (frameProducer != null) {
+            display.draw(frameProducer.latestFrame());
+            return;
+        }
+
         delta = Math.min(delta, 0.25f);
 
         accumulator += delta;
@@ -58,147 +85,141 @@ public class SpaceInvaders extends InputAdapter implements Disposable {
     }
 
     private void renderFrame () {
-        // we must fire 2 interrupts.
-        // one in the middle of the frame, other at the end
-
-        int halfCycles = 0;
-        while (halfCycles < HALF_FRAME_CYCLES) {
-            halfCycles += processor.step();
-        }
-
-        if (processor.isInterruptsEnabled()) {
-            processor.RST_VALUE(1); // mid frame interrupt
-        }
-
-        int secondHalf = 0;
-        while (secondHalf <= HALF_FRAME_CYCLES) {
-            secondHalf += processor.step();
+        if (rewinding) {
+            // the oldest frame stays on screen once there is nothing left to go back to
+            if (rewindBuffer.pop(state)) {
+                machine.loadState(state);
+                frame--;
+                if (movie != null) {
+                    movie.truncate(frame);
+                }
+            }
+        } else {
+            machine.setInputs(inputs);
+            if (rewindBuffer != null) {
+                // saved before the frame runs, so every pop goes back exactly one frame
+                stateBuffer.clear();
+                machine.saveState(stateBuffer);
+                rewindBuffer.push(state);
+            }
+            machine.runFrame();
+            frame++;
+            if (movie != null) {
+                movie.record(inputs, machine.hashVram());
+            }
         }
 
-        if (processor.isInterruptsEnabled()) {
-            processor.RST_VALUE(2); // end of the frame interrupt
+        if (runAheadFrames > 0) {
+            runAhead();
+        } else {
+            display.draw(machine);
         }
-
-        display.draw(processor);
     }
 
-    public void loadGameRom (Processor processor) {
-        FileHandle romH = Gdx.files.internal("invaders/invaders.h");
-        FileHandle romG = Gdx.files.internal("invaders/invaders.g");
-        FileHandle romF = Gdx.files.internal("invaders/invaders.f");
-        FileHandle romE = Gdx.files.internal("invaders/invaders.e");
-
-        byte[] bytesH = romH.readBytes();
-        byte[] bytesG = romG.readBytes();
-        byte[] bytesF = romF.readBytes();
-        byte[] bytesE = romE.readBytes();
-
-        Memory memory = processor.getMemory();
+    /**
+     * Runs the frames ahead with the input as it is now, shows the last of them and goes back to the real frame.
+     * Loading the state marks all of video RAM dirty, so the shown frame is diffed against the one before instead
+     */
+    private void runAhead () {
+        long start = System.nanoTime();
+        aheadStateBuffer.clear();
+        machine.saveState(aheadStateBuffer);
+        if (!rewinding) {
+            for (int i = 0; i < runAheadFrames; i++) {
+                machine.runFrame();
+            }
+        }
+        machine.copyVram(aheadFrame);
+        machine.loadState(aheadState);
+        machine.getVramTracker().clear();
+        runAheadNanos += System.nanoTime() - start;
+        runAheadCount++;
 
-        System.arraycopy(bytesH, 0, memory.getMemoryBytes(), 0x0000, bytesH.length);
-        System.arraycopy(bytesG, 0, memory.getMemoryBytes(), 0x0800, bytesG.length);
-        System.arraycopy(bytesF, 0, memory.getMemoryBytes(), 0x1000, bytesF.length);
-        System.arraycopy(bytesE, 0, memory.getMemoryBytes(), 0x1800, bytesE.length);
+        display.draw(aheadFrame);
     }
 
-    private int readPort(int port) {
-        if (port == 3) {  // read shift data
-            int v = (shift1 << 8) | shift0;
-            return (v >> (8 - shiftOffset)) & 0xFF;
-        }
-        return ports[port] & 0xFF;
+    public BlockCache getBlockCache () {
+        return machine.getBlockCache();
     }
 
-    private void writePort (int port, int value) {
-        switch (port) {
-            case 2:  // write shift offset
-                shiftOffset = value & 0x07;
-                break;
-            case 4:  // write shift register
-                shift0 = shift1;
-                shift1 = value & 0xFF;
-                break;
-            default:
-                ports[port] = value & 0xFF;
+    private void loadGameRom () {
+        for (int i = 0; i < SpaceInvadersMachine.ROM_FILES.length; i++) {
+            machine.loadRom(i, Gdx.files.internal("invaders/" + SpaceInvadersMachine.ROM_FILES[i]).readBytes());
         }
     }
 
-    // input constants
-    private static final int CREDIT = 1;
-    private static final int START_2P = (1 << 1);
-    private static final int START_1P = (1 << 2);
-    private static final int SHOT_1P = (1 << 4);
-    private static final int LEFT_1P = (1 << 5);
-    private static final int RIGHT_1P = (1 << 6);
-    private static final int TILT = (1 << 2);
-    private static final int SHOT_2P = (1 << 4);
-    private static final int LEFT_2P = (1 << 5);
-    private static final int RIGHT_2P = (1 << 6);
-
     @Override
     public boolean keyDown(int key) {
-        switch (key) {
-            case Input.Keys.NUM_1:
-                ports[1] |= START_1P;
-                return true;
-            case Input.Keys.C:
-                ports[1] |= CREDIT;
-                return true;
-            case Input.Keys.T:
-                ports[1] |= TILT;
-                return true;
-            case Input.Keys.SPACE:
-                ports[1] |= SHOT_1P;
-                ports[2] |= SHOT_2P;
-                return true;
-            case Input.Keys.D:
-                ports[1] |= RIGHT_1P;
-                ports[2] |= RIGHT_2P;
-                return true;
-            case Input.Keys.A:
-                ports[1] |= LEFT_1P;
-                ports[2] |= LEFT_2P;
-                return true;
-            case Input.Keys.NUM_2:
-                ports[1] |= START_2P;
-                return true;
-        }
-        return false;
+        return setKey(key, true);
     }
 
     @Override
     public boolean keyUp(int key) {
+        return setKey(key, false);
+    }
+
+    private boolean setKey (int key, boolean pressed) {
         switch (key) {
-            case Input.Keys.NUM_1:
-                ports[1] &= ~START_1P;
+            case Keys.NUM_1:
+                setInput(Input.START_1P, pressed);
                 return true;
-            case Input.Keys.C:
-                ports[1] &= ~CREDIT;
+            case Keys.C:
+                setInput(Input.CREDIT, pressed);
                 return true;
-            case Input.Keys.T:
-                ports[1] &= ~TILT;
+            case Keys.T:
+                setInput(Input.TILT, pressed);
                 return true;
-            case Input.Keys.SPACE:
-                ports[1] &= ~SHOT_1P;
-                ports[2] &= ~SHOT_2P;
+            case Keys.SPACE:
+                setInput(Input.SHOT_1P, pressed);
+                setInput(Input.SHOT_2P, pressed);
                 return true;
-            case Input.Keys.D:
-                ports[1] &= ~RIGHT_1P;
-                ports[2] &= ~RIGHT_2P;
+            case Keys.D:
+                setInput(Input.RIGHT_1P, pressed);
+                setInput(Input.RIGHT_2P, pressed);
                 return true;
-            case Input.Keys.A:
-                ports[1] &= ~LEFT_1P;
-                ports[2] &= ~LEFT_2P;
+            case Keys.A:
+                setInput(Input.LEFT_1P, pressed);
+                setInput(Input.LEFT_2P, pressed);
                 return true;
-            case Input.Keys.NUM_2:
-                ports[2] &= ~START_2P;
+            case Keys.NUM_2:
+                setInput(Input.START_2P, pressed);
+                return true;
+            case Keys.BACKSPACE:
+                rewinding = pressed && rewindBuffer != null;
                 return true;
         }
         return false;
     }
 
+    private void setInput (Input input, boolean pressed) {
+        if (frameProducer != null) {
+            frameProducer.setInput(input, pressed);
+        } else if (pressed) {
+            inputs |= input.mask();
+        } else {
+            inputs &= ~input.mask();
+        }
+    }
+
     @Override
     public void dispose() {
+        if (frameProducer != null) {
+            frameProducer.stop();
+            Gdx.app.log("SpaceInvaders", frameProducer.toString());
+        }
+        Gdx.app.log("SpaceInvaders", machine.getBlockCache().toString());
+        Gdx.app.log("SpaceInvaders", display.toString());
+        if (rewindBuffer != null) {
+            Gdx.app.log("SpaceInvaders", rewindBuffer.toString());
+        }
+        if (movie != null) {
+            movieFile.writeBytes(movie.toBytes(), false);
+            Gdx.app.log("SpaceInvaders", movie + " written to " + movieFile.path());
+        }
+        if (runAheadCount > 0) {
+            Gdx.app.log("SpaceInvaders", "Run-ahead of " + runAheadFrames + " frames: "
+                + runAheadNanos / runAheadCount / 1000 + " us a frame on top of the real one");
+        }
         display.dispose();
     }
 }
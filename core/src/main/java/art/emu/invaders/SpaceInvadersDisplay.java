@@ -1,26 +1,44 @@
 package art.emu.invaders;
 
-import art.emu.Processor;
+import art.emu.MemoryBus;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
 public class SpaceInvadersDisplay implements Disposable {
     private final SpriteBatch batch;
     private final ScreenViewport viewport;
 
-    public static final int SCREEN_WIDTH = 256;
-    public static final int SCREEN_HEIGHT = 224;
+    public static final int SCREEN_WIDTH = VramConverter.WIDTH;
+    public static final int SCREEN_HEIGHT = VramConverter.HEIGHT;
+
+    // the upright picture, a VRAM line is a column of it
+    private static final int TEXTURE_WIDTH = VramConverter.SCREEN_WIDTH, TEXTURE_HEIGHT = VramConverter.SCREEN_HEIGHT;
 
-    private final Pixmap pixmap;
+    // the band of columns to upload, converted straight into it, no Pixmap or picture in between
+    private final ByteBuffer pixels = BufferUtils.newByteBuffer(TEXTURE_WIDTH * TEXTURE_HEIGHT * 4);
+    private final IntBuffer pixelInts = pixels.asIntBuffer();
+    private final VramConverter converter = new VramConverter(pixelInts.order());
     private final Texture texture;
 
+    // last frame drawn from a FrameProducer, lines are only converted again when they differ from it
+    private final byte[] shownFrame = new byte[SpaceInvadersMachine.V_RAM_SIZE];
+    private boolean shownFrameValid;
+
+    private int dirtyLines, dirtyBytes;
+    private long frames, uploads, uploadedLines;
+
     private final ShaderProgram scanlineShader;
 
     public SpaceInvadersDisplay () {
@@ -32,8 +50,7 @@ public class SpaceInvadersDisplay implements Disposable {
 
         viewport = new ScreenViewport(camera);
 
-        pixmap = new Pixmap(SCREEN_WIDTH, SCREEN_HEIGHT, Pixmap.Format.RGBA8888);
-        texture = new Texture(pixmap);
+        texture = new Texture(TEXTURE_WIDTH, TEXTURE_HEIGHT, Pixmap.Format.RGBA8888);
 
         scanlineShader = new ShaderProgram(
             Gdx.files.internal("shaders/scanline.vert"),
@@ -42,53 +59,120 @@ public class SpaceInvadersDisplay implements Disposable {
         batch.setShader(scanlineShader);
     }
 
-    public void draw(Processor processor) {
-        ScreenUtils.clear(0, 0, 0, 1f);
+    /**
+     * Converts and uploads the band of lines the CPU changed since the last draw, then draws the texture
+     */
+    public void draw(SpaceInvadersMachine machine) {
+        VramTracker vram = machine.getVramTracker();
+        dirtyLines = vram.getDirtyLineCount();
+        dirtyBytes = vram.getDirtyBytes();
+        if (vram.isDirty()) {
+            MemoryBus memory = machine.getProcessor().getMemory();
+            int first = vram.getFirstDirtyLine(), last = vram.getLastDirtyLine();
+            pixelInts.clear();
+            converter.convert(memory, first, last, pixelInts);
+            upload(first, last);
+            vram.clear();
+        }
+        present();
+    }
 
-        // clear the pixmap
-        pixmap.setColor(0f, 0f, 0f, 1f);
-        pixmap.fill();
-
-        byte[] mem = processor.getMemory().getMemoryBytes();
-        int index = 0;
-        for (int addr = SpaceInvaders.V_RAM_START; addr <= SpaceInvaders.V_RAM_END; addr++) {
-            int memByte = mem[addr] & 0xFF;
-
-            for (int bit = 0; bit < 8; bit++, index++) {
-                boolean on = ((memByte >> bit) & 1) != 0;
-                int x = index % SCREEN_WIDTH;
-                int y = index / SCREEN_WIDTH;
-
-                if (on) {
-                    if (x < 64) { // we use X because our screen is rotated
-                        pixmap.drawPixel(x, y, 0x00FF00FF); // green
-                    } else {
-                        pixmap.drawPixel(x, y, 0xFFFFFFFF);
-                    }
-                } else {
-                    pixmap.drawPixel(x, y, 0x000000FF);
+    /**
+     * Converts and uploads the band of lines that differ from the last frame drawn, then draws the texture
+     * @param frame video RAM from {@link FrameProducer#latestFrame()}, null to draw the last frame again
+     */
+    public void draw(byte[] frame) {
+        if (frame != null) {
+            dirtyLines = 0;
+            dirtyBytes = 0;
+            int first = SCREEN_HEIGHT, last = -1;
+            for (int y = 0; y < SCREEN_HEIGHT; y++) {
+                int changed = changedBytes(frame, y);
+                if (changed > 0) {
+                    first = Math.min(first, y);
+                    last = y;
+                    dirtyLines++;
+                    dirtyBytes += changed;
                 }
             }
+            if (last >= 0) {
+                pixelInts.clear();
+                converter.convert(frame, first, last, pixelInts);
+                upload(first, last);
+            }
+            System.arraycopy(frame, 0, shownFrame, 0, shownFrame.length);
+            shownFrameValid = true;
+        }
+        present();
+    }
+
+    private int changedBytes (byte[] frame, int y) {
+        if (!shownFrameValid) {
+            return VramConverter.BYTES_PER_LINE;
+        }
+        int start = y * VramConverter.BYTES_PER_LINE;
+        int changed = 0;
+        for (int i = start; i < start + VramConverter.BYTES_PER_LINE; i++) {
+            if (frame[i] != shownFrame[i]) {
+                changed++;
+            }
         }
+        return changed;
+    }
+
+    /**
+     * Uploads the band of columns from the first to the last dirty line in one call. GL ES 2 has no row length to
+     * upload part of a wider image, so the band is converted packed row by row, the clean lines in between along
+     * with the dirty ones, see {@link VramConverter#convert(MemoryBus, int, int, IntBuffer)}
+     */
+    private void upload (int first, int last) {
+        int lines = last - first + 1;
+        pixels.limit(lines * TEXTURE_HEIGHT * 4);
+        texture.bind();
+        Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, first, 0, lines, TEXTURE_HEIGHT, GL20.GL_RGBA,
+            GL20.GL_UNSIGNED_BYTE, pixels);
+        pixels.clear();
+
+        uploads++;
+        uploadedLines += lines;
+    }
 
-        texture.draw(pixmap, 0, 0);
+    private void present () {
+        ScreenUtils.clear(0, 0, 0, 1f);
+        frames++;
 
         batch.setProjectionMatrix(viewport.getCamera().combined);
         batch.begin();
-        batch.draw(texture, 0, 0,
-            SCREEN_WIDTH * 0.5f, SCREEN_HEIGHT * 0.5f,
-            SCREEN_WIDTH, SCREEN_HEIGHT,
-            1f, 1f,
-            90f, 0, 0,
-            texture.getWidth(), texture.getHeight(),
-            false, false);
+        // upright already, centred where the texture turned on its side used to be
+        batch.draw(texture, (SCREEN_WIDTH - TEXTURE_WIDTH) * 0.5f, (SCREEN_HEIGHT - TEXTURE_HEIGHT) * 0.5f);
         batch.end();
     }
 
+    /**
+     * @return lines that had changed for the last draw with a new frame
+     */
+    public int getDirtyLines () {
+        return dirtyLines;
+    }
+
+    /**
+     * @return video RAM writes that changed a byte for the last draw with a new frame, bytes that differ when
+     * drawing frames of a {@link FrameProducer}
+     */
+    public int getDirtyBytes () {
+        return dirtyBytes;
+    }
+
+    @Override
+    public String toString () {
+        return "SpaceInvadersDisplay[frames=" + frames + ", uploads=" + uploads + ", uploadedLines=" + uploadedLines
+            + " of " + frames * SCREEN_HEIGHT + "]";
+    }
+
     @Override
     public void dispose() {
         batch.dispose();
         scanlineShader.dispose();
-        pixmap.dispose();
+        texture.dispose();
     }
 }
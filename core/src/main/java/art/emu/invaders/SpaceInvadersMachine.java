@@ -0,0 +1,396 @@
+package art.emu.invaders;
+
+import art.emu.BlockCache;
+import art.emu.BlockCompiler;
+import art.emu.ConditionFlags;
+import art.emu.MemoryBus;
+import art.emu.Processor;
+import art.emu.Registers;
+import art.emu.Scheduler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Space Invaders board without anything libGDX: CPU, memory, the shift register and the input ports.
+ * Loading the ROMs, drawing and timing are up to whoever runs it
+ */
+public class SpaceInvadersMachine {
+    public static final int V_RAM_START = 0x2400, V_RAM_END = 0x3FFF;
+    public static final int V_RAM_SIZE = V_RAM_END - V_RAM_START + 1;
+
+    // 8K of ROM, then 8K of RAM mirrored from 0x4000 up
+    public static final int ROM_SIZE = 0x2000, RAM_SIZE = 0x2000;
+
+    /**
+     * ROM files in the order they are mapped, 2K each from address 0
+     */
+    public static final String[] ROM_FILES = { "invaders.h", "invaders.g", "invaders.f", "invaders.e" };
+    public static final int ROM_FILE_SIZE = 0x800;
+
+    public static final int CPU_FREQ = 2_000_000;   // 2 MHz
+    public static final int CYCLES_PER_FRAME = CPU_FREQ / 60;        // ≈33 333
+    private static final int HALF_FRAME_CYCLES = CYCLES_PER_FRAME / 2; // ≈16 666
+
+    // RST 1 when the beam is in the middle of the screen, RST 2 at the start of vertical blank
+    private static final int MID_SCREEN_VECTOR = 1, VBLANK_VECTOR = 2;
+
+    /**
+     * "SI80" at the start of every saved state, followed by {@link #STATE_VERSION}
+     */
+    public static final int STATE_MAGIC = 0x53493830;
+    public static final int STATE_VERSION = 1;
+
+    /**
+     * Bytes of a saved state: magic and version, the processor, RAM, ports, shift register, then the cycle counter,
+     * the end of the frame and the deadlines of both interrupts
+     */
+    public static final int STATE_SIZE = 4 + 4 + Processor.STATE_SIZE + RAM_SIZE + 8 + 3 + 4 * 8;
+
+    // where the game keeps player 1's score, two BCD digits each, and the ships in reserve
+    private static final int SCORE_1P_LOW = 0x20F8, SCORE_1P_HIGH = 0x20F9, SHIPS_1P = 0x21FF;
+
+    /**
+     * Cabinet inputs with the port and bit they show up on
+     */
+    public enum Input {
+        CREDIT(1, 1),
+        START_2P(1, 1 << 1),
+        START_1P(1, 1 << 2),
+        SHOT_1P(1, 1 << 4),
+        LEFT_1P(1, 1 << 5),
+        RIGHT_1P(1, 1 << 6),
+        TILT(2, 1 << 2),
+        SHOT_2P(2, 1 << 4),
+        LEFT_2P(2, 1 << 5),
+        RIGHT_2P(2, 1 << 6);
+
+        private final int port;
+        private final int bit;
+
+        Input (int port, int bit) {
+            this.port = port;
+            this.bit = bit;
+        }
+
+        /**
+         * @return bit of the input in {@link #getInputs()}
+         */
+        public int mask () {
+            return port == 1 ? bit : bit << 8;
+        }
+    }
+
+    private final int[] ports = new int[8];
+
+    // dedicated shift register
+    private int shift0, shift1, shiftOffset;
+
+    private final Processor processor;
+    private final BlockCache blockCache;
+    private final VramTracker vramTracker;
+
+    private final Scheduler scheduler = new Scheduler();
+    private long frameEnd;
+
+    private final Scheduler.Event midScreen = new Scheduler.Event() {
+        @Override
+        public void fire (long deadline) {
+            processor.requestInterrupt(MID_SCREEN_VECTOR);
+            scheduler.schedule(deadline + CYCLES_PER_FRAME, this);
+        }
+    };
+    private final Scheduler.Event vblank = new Scheduler.Event() {
+        @Override
+        public void fire (long deadline) {
+            processor.requestInterrupt(VBLANK_VECTOR);
+            scheduler.schedule(deadline + CYCLES_PER_FRAME, this);
+        }
+    };
+
+    public SpaceInvadersMachine () {
+        this(null);
+    }
+
+    /**
+     * A machine with a ROM of its own, filled with {@link #loadRom(int, byte[])}
+     * @param blockCompiler compiler for hot blocks, null to only interpret
+     */
+    public SpaceInvadersMachine (BlockCompiler blockCompiler) {
+        this(new MemoryBus(ROM_SIZE, RAM_SIZE), blockCompiler);
+    }
+
+    /**
+     * A machine that maps a shared ROM image and only allocates its own RAM, ready to run
+     * @param blockCompiler compiler for hot blocks, null to only interpret
+     */
+    public SpaceInvadersMachine (RomImage rom, BlockCompiler blockCompiler) {
+        this(new MemoryBus(rom.bytes, RAM_SIZE), blockCompiler);
+    }
+
+    private SpaceInvadersMachine (MemoryBus memory, BlockCompiler blockCompiler) {
+        processor = new Processor(memory, new ConditionFlags());
+        processor.setHardwareIOExecutor(new Processor.HardwareIOExecutor() {
+            @Override
+            public void hardwareIN (Processor processor, int port) {
+                processor.writeRegisterValue(Registers.ACCUMULATOR, (byte) readPort(port));
+            }
+            @Override
+            public void hardwareOUT (Processor processor, int port) {
+                writePort(port, processor.getRegisterValue(Registers.ACCUMULATOR));
+            }
+        });
+
+        blockCache = new BlockCache(processor.getMemory());
+        blockCache.setCompiler(blockCompiler, BlockCache.DEFAULT_COMPILE_THRESHOLD);
+        vramTracker = new VramTracker(processor.getMemory());
+
+        scheduler.schedule(HALF_FRAME_CYCLES, midScreen);
+        scheduler.schedule(CYCLES_PER_FRAME, vblank);
+    }
+
+    /**
+     * A copy of the machine as it is now that runs on by itself, e.g. to try different inputs from the same point of
+     * a game. The two share the ROM and their RAM pages until either writes one, see {@link MemoryBus#fork()}, so a
+     * fork costs a few tables and the RAM it ends up writing. Without a compiler the fork also starts from the blocks
+     * already decoded, see {@link BlockCache#shareRomBlocks(BlockCache)}, with one it compiles its own. Neither machine
+     * can load ROM files anymore
+     */
+    public SpaceInvadersMachine fork () {
+        SpaceInvadersMachine fork = new SpaceInvadersMachine(processor.getMemory().fork(), blockCache.getCompiler());
+        fork.blockCache.setCompiler(blockCache.getCompiler(), blockCache.getCompileThreshold());
+        fork.blockCache.shareRomBlocks(blockCache);
+        fork.processor.copyStateFrom(processor);
+        System.arraycopy(ports, 0, fork.ports, 0, ports.length);
+        fork.shift0 = shift0;
+        fork.shift1 = shift1;
+        fork.shiftOffset = shiftOffset;
+        fork.frameEnd = frameEnd;
+        fork.scheduler.reset(scheduler.getCycle());
+        fork.scheduler.schedule(scheduler.deadlineOf(midScreen), fork.midScreen);
+        fork.scheduler.schedule(scheduler.deadlineOf(vblank), fork.vblank);
+        return fork;
+    }
+
+    /**
+     * @param index position of the file in {@link #ROM_FILES}
+     * @throws IllegalStateException if the machine maps a shared {@link RomImage}
+     */
+    public void loadRom (int index, byte[] bytes) {
+        if (bytes.length > ROM_FILE_SIZE) {
+            throw new IllegalArgumentException(ROM_FILES[index] + " is " + bytes.length + " bytes, expected " + ROM_FILE_SIZE);
+        }
+        processor.getMemory().loadRom(index * ROM_FILE_SIZE, bytes);
+        blockCache.clear();
+    }
+
+    /**
+     * Runs one frame worth of cycles. Cycles the last instruction ran over the end of the frame count towards the
+     * next one
+     * @return cycles executed
+     */
+    public int runFrame () {
+        long start = scheduler.getCycle();
+        frameEnd += CYCLES_PER_FRAME;
+        runUntil(frameEnd);
+        return (int) (scheduler.getCycle() - start);
+    }
+
+    /**
+     * Runs the CPU straight to the next scheduled event every time and fires the events, until the cycle counter
+     * reaches the cycle
+     */
+    public void runUntil (long cycle) {
+        while (scheduler.getCycle() < cycle) {
+            int budget = (int) (Math.min(scheduler.nextDeadline(), cycle) - scheduler.getCycle());
+            if (!processor.isInterruptPending()) {
+                scheduler.advance(blockCache.execute(processor, budget));
+            } else if (processor.isInterruptsEnabled()) {
+                scheduler.advance(processor.acceptInterrupt());
+            } else {
+                // interrupts are off, interpret until they are back on and the interrupt can go in
+                scheduler.advance(processor.runCycles(budget));
+            }
+            scheduler.fireDue();
+        }
+    }
+
+    /**
+     * @return cycles run since power on
+     */
+    public long getCycle () {
+        return scheduler.getCycle();
+    }
+
+    public Scheduler getScheduler () {
+        return scheduler;
+    }
+
+    /**
+     * Writes everything that changes while the machine runs, {@link #STATE_SIZE} bytes. The ROM is left out, a
+     * state only loads into a machine with the same ROMs
+     */
+    public void saveState (ByteBuffer buffer) {
+        buffer.putInt(STATE_MAGIC);
+        buffer.putInt(STATE_VERSION);
+        processor.writeState(buffer);
+        processor.getMemory().writeRam(buffer);
+        for (int port : ports) {
+            buffer.put((byte) port);
+        }
+        buffer.put((byte) shift0);
+        buffer.put((byte) shift1);
+        buffer.put((byte) shiftOffset);
+        buffer.putLong(scheduler.getCycle());
+        buffer.putLong(frameEnd);
+        buffer.putLong(scheduler.deadlineOf(midScreen));
+        buffer.putLong(scheduler.deadlineOf(vblank));
+    }
+
+    /**
+     * @return a new saved state
+     */
+    public byte[] saveState () {
+        byte[] state = new byte[STATE_SIZE];
+        saveState(ByteBuffer.wrap(state));
+        return state;
+    }
+
+    /**
+     * Puts the machine back into a state from {@link #saveState(ByteBuffer)}, the whole screen counts as changed
+     * afterwards
+     * @throws IllegalArgumentException if it isn't a state of this version
+     */
+    public void loadState (ByteBuffer buffer) {
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        if (magic != STATE_MAGIC || version != STATE_VERSION) {
+            throw new IllegalArgumentException("Not a version " + STATE_VERSION + " Space Invaders state, magic 0x"
+                + Integer.toHexString(magic) + " version " + version);
+        }
+        processor.readState(buffer);
+        processor.getMemory().readRam(buffer);
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = buffer.get() & 0xFF;
+        }
+        shift0 = buffer.get() & 0xFF;
+        shift1 = buffer.get() & 0xFF;
+        shiftOffset = buffer.get() & 0xFF;
+        scheduler.reset(buffer.getLong());
+        frameEnd = buffer.getLong();
+        scheduler.schedule(buffer.getLong(), midScreen);
+        scheduler.schedule(buffer.getLong(), vblank);
+        vramTracker.markAll();
+    }
+
+    public void loadState (byte[] state) {
+        loadState(ByteBuffer.wrap(state));
+    }
+
+    public void setInput (Input input, boolean pressed) {
+        if (pressed) {
+            ports[input.port] |= input.bit;
+        } else {
+            ports[input.port] &= ~input.bit;
+        }
+    }
+
+    /**
+     * @return all inputs at once, port 1 in the low byte and port 2 in the one above
+     */
+    public int getInputs () {
+        return ports[1] | ports[2] << 8;
+    }
+
+    /**
+     * @param inputs port 1 in the low byte and port 2 in the one above, as {@link #getInputs()} returns them
+     */
+    public void setInputs (int inputs) {
+        ports[1] = inputs & 0xFF;
+        ports[2] = (inputs >> 8) & 0xFF;
+    }
+
+    /**
+     * @return player 1's score as the game shows it, read from RAM
+     */
+    public int getScore () {
+        MemoryBus memory = processor.getMemory();
+        return fromBcd(memory.readMapped(SCORE_1P_HIGH)) * 100 + fromBcd(memory.readMapped(SCORE_1P_LOW));
+    }
+
+    private static int fromBcd (int value) {
+        return (value >> 4) * 10 + (value & 0x0F);
+    }
+
+    /**
+     * @return ships player 1 has in reserve besides the one in play, as the game counts them in RAM
+     */
+    public int getShips () {
+        return processor.getMemory().readMapped(SHIPS_1P);
+    }
+
+    /**
+     * @return FNV-1a hash of video RAM, to tell whether two runs showed the same frame
+     */
+    public int hashVram () {
+        MemoryBus memory = processor.getMemory();
+        int hash = 0x811C9DC5;
+        for (int offset = 0; offset < V_RAM_SIZE; offset += MemoryBus.PAGE_SIZE) {
+            byte[] bytes = memory.readArray(V_RAM_START + offset);
+            int start = memory.readOffset(V_RAM_START + offset);
+            int end = start + Math.min(MemoryBus.PAGE_SIZE, V_RAM_SIZE - offset);
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Copies video RAM, {@link #V_RAM_SIZE} bytes, e.g. to hand a finished frame to another thread
+     */
+    public void copyVram (byte[] into) {
+        MemoryBus memory = processor.getMemory();
+        for (int offset = 0; offset < V_RAM_SIZE; offset += MemoryBus.PAGE_SIZE) {
+            int length = Math.min(MemoryBus.PAGE_SIZE, V_RAM_SIZE - offset);
+            System.arraycopy(memory.readArray(V_RAM_START + offset), memory.readOffset(V_RAM_START + offset), into,
+                offset, length);
+        }
+    }
+
+    public Processor getProcessor () {
+        return processor;
+    }
+
+    public BlockCache getBlockCache () {
+        return blockCache;
+    }
+
+    /**
+     * @return the lines of video RAM the CPU changed since the display last caught up
+     */
+    public VramTracker getVramTracker () {
+        return vramTracker;
+    }
+
+    private int readPort (int port) {
+        if (port == 3) {  // read shift data
+            int v = (shift1 << 8) | shift0;
+            return (v >> (8 - shiftOffset)) & 0xFF;
+        }
+        return ports[port] & 0xFF;
+    }
+
+    private void writePort (int port, int value) {
+        switch (port) {
+            case 2:  // write shift offset
+                shiftOffset = value & 0x07;
+                break;
+            case 4:  // write shift register
+                shift0 = shift1;
+                shift1 = value & 0xFF;
+                break;
+            default:
+                ports[port] = value & 0xFF;
+        }
+    }
+}
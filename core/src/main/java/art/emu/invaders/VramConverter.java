@@ -0,0 +1,155 @@
+package art.emu.invaders;
+
+import art.emu.MemoryBus;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Expands video RAM into RGBA8888 pixels of the upright screen, straight into the buffer a texture upload reads. The
+ * monitor of the cabinet is turned on its side, so a 256 pixel VRAM line with the lowest bit first is a column of the
+ * picture from the bottom up, the first line the leftmost column, and the picture needs no rotation when it is drawn.
+ * <p>
+ * The buffer is written a row at a time in order. Eight lines side by side are packed into two ints per byte column,
+ * from those a multiply gathers the bit each of the eight has for a row into one byte, and a table of the 8 pixels
+ * every byte value turns into, one table per colour band, gives the pixels. A row is put into the buffer in one go.
+ * Not thread safe, the packed lines and the row are kept between calls
+ */
+public class VramConverter {
+    /**
+     * Size of video RAM, {@link #HEIGHT} lines of {@link #WIDTH} pixels
+     */
+    public static final int WIDTH = 256, HEIGHT = 224;
+    public static final int BYTES_PER_LINE = WIDTH / 8;
+
+    /**
+     * Size of the upright picture {@link #convert} draws, a column for every VRAM line
+     */
+    public static final int SCREEN_WIDTH = HEIGHT, SCREEN_HEIGHT = WIDTH;
+
+    // the first 64 pixels of every line are behind the green strip of the cabinet, the bottom of the screen
+    private static final int GREEN_BYTES = 64 / 8;
+
+    private static final int GREEN = 0x00FF00FF, WHITE = 0xFFFFFFFF, BLACK = 0x000000FF;
+
+    // blocks of 8 lines in the widest band
+    private static final int BLOCKS = (SCREEN_WIDTH + 7) / 8;
+    // lines 8 * block to 8 * block + 3 of the band in lowLines[column * BLOCKS + block], a byte each from the lowest,
+    // the next 4 in highLines
+    private final int[] lowLines = new int[BYTES_PER_LINE * BLOCKS];
+    private final int[] highLines = new int[BYTES_PER_LINE * BLOCKS];
+    // a row of the band, the last block may fill up to 7 pixels past its width
+    private final int[] row = new int[BLOCKS * 8];
+
+    private final int[] greenPixels;
+    private final int[] whitePixels;
+
+    /**
+     * @param order byte order of the buffers the pixels end up in, the pixels are R, G, B, A in memory
+     */
+    public VramConverter (ByteOrder order) {
+        greenPixels = expand(GREEN, order);
+        whitePixels = expand(WHITE, order);
+    }
+
+    private static int[] expand (int on, ByteOrder order) {
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            on = Integer.reverseBytes(on);
+        }
+        int off = order == ByteOrder.LITTLE_ENDIAN ? Integer.reverseBytes(BLACK) : BLACK;
+
+        int[] pixels = new int[256 * 8];
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < 8; bit++) {
+                pixels[value * 8 + bit] = ((value >> bit) & 1) != 0 ? on : off;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Converts the whole screen
+     * @param pixels gets {@link #SCREEN_WIDTH} by {@link #SCREEN_HEIGHT} pixels from its position on, top row first
+     */
+    public void convert (MemoryBus memory, IntBuffer pixels) {
+        convert(memory, 0, HEIGHT - 1, pixels);
+    }
+
+    /**
+     * Converts VRAM lines first to last into the band of columns of the picture they are, e.g. the band a texture
+     * upload takes
+     * @param pixels gets last - first + 1 by {@link #SCREEN_HEIGHT} pixels from its position on, top row first
+     */
+    public void convert (MemoryBus memory, int first, int last, IntBuffer pixels) {
+        clearLines(last - first + 1);
+        for (int y = first; y <= last; y++) {
+            // a line never crosses a page, read past the page handlers as SpaceInvadersMachine#copyVram does
+            int address = SpaceInvadersMachine.V_RAM_START + y * BYTES_PER_LINE;
+            packLine(memory.readArray(address), memory.readOffset(address), y - first);
+        }
+        putRows(last - first + 1, pixels);
+    }
+
+    /**
+     * Same as {@link #convert(MemoryBus, int, int, IntBuffer)} from a copy of video RAM
+     * @param vram {@link SpaceInvadersMachine#V_RAM_SIZE} bytes from {@link SpaceInvadersMachine#V_RAM_START}
+     */
+    public void convert (byte[] vram, int first, int last, IntBuffer pixels) {
+        clearLines(last - first + 1);
+        for (int y = first; y <= last; y++) {
+            packLine(vram, y * BYTES_PER_LINE, y - first);
+        }
+        putRows(last - first + 1, pixels);
+    }
+
+    private void clearLines (int width) {
+        int blocks = (width + 7) >> 3;
+        for (int column = 0; column < BYTES_PER_LINE; column++) {
+            for (int block = column * BLOCKS; block < column * BLOCKS + blocks; block++) {
+                lowLines[block] = 0;
+                highLines[block] = 0;
+            }
+        }
+    }
+
+    // line of the band from offset on into byte line % 4 of its block's ints
+    private void packLine (byte[] bytes, int offset, int line) {
+        int[] lines = (line & 4) == 0 ? lowLines : highLines;
+        int shift = (line & 3) << 3;
+        for (int column = 0, index = line >> 3; column < BYTES_PER_LINE; column++, index += BLOCKS) {
+            lines[index] |= (bytes[offset + column] & 0xFF) << shift;
+        }
+    }
+
+    // row r shows bit 7 - r % 8 of byte column 31 - r / 8 of every line
+    private void putRows (int width, IntBuffer pixels) {
+        int[] row = this.row;
+        int[] lowLines = this.lowLines, highLines = this.highLines;
+        int end = ((width + 7) >> 3) << 3;
+        for (int y = 0; y < SCREEN_HEIGHT; y++) {
+            int column = (SCREEN_HEIGHT - 1 - y) >> 3;
+            int bit = (SCREEN_HEIGHT - 1 - y) & 7;
+            int[] table = column < GREEN_BYTES ? greenPixels : whitePixels;
+            for (int x = 0, index = column * BLOCKS; x < end; x += 8, index++) {
+                int from = (gather(lowLines[index], bit) | gather(highLines[index], bit) << 4) << 3;
+                row[x] = table[from];
+                row[x + 1] = table[from + 1];
+                row[x + 2] = table[from + 2];
+                row[x + 3] = table[from + 3];
+                row[x + 4] = table[from + 4];
+                row[x + 5] = table[from + 5];
+                row[x + 6] = table[from + 6];
+                row[x + 7] = table[from + 7];
+            }
+            pixels.put(row, 0, width);
+        }
+    }
+
+    /**
+     * @return the bit of each of the 4 bytes into bits 0 to 3. The multiply moves byte i's bit to bit 28 + i and
+     * nothing else lands there, the product stays below 2^53 so it is exact in JavaScript as well
+     */
+    private static int gather (int bytes, int bit) {
+        return ((bytes >>> bit) & 0x01010101) * 0x10204080 >>> 28;
+    }
+}
@@ -0,0 +1,113 @@
+package art.emu.invaders;
+
+import art.emu.MemoryBus;
+
+import java.util.Arrays;
+
+/**
+ * Handler on every page that maps onto video RAM, including the mirrors, that remembers which screen lines the CPU
+ * changed since the display last caught up. Only writes go through it, and writes of the value a byte already holds
+ * don't count
+ */
+public class VramTracker implements MemoryBus.PageHandler {
+    private static final int LINES = VramConverter.HEIGHT;
+    private static final int LINE_SHIFT = 5; // 32 bytes per line
+
+    private final int vramStart;
+    private final boolean[] dirtyLines = new boolean[LINES];
+    private int firstDirtyLine;
+    private int lastDirtyLine;
+    private int dirtyLineCount;
+    private int dirtyBytes;
+
+    public VramTracker (MemoryBus bus) {
+        vramStart = bus.physicalAddress(SpaceInvadersMachine.V_RAM_START);
+        int vramEnd = bus.physicalAddress(SpaceInvadersMachine.V_RAM_END);
+        for (int page = 0; page < MemoryBus.PAGE_COUNT; page++) {
+            int physical = bus.physicalAddress(page << MemoryBus.PAGE_SHIFT);
+            if (physical >= vramStart && physical <= vramEnd) {
+                bus.setPageHandler(page, this, false);
+            }
+        }
+        markAll();
+    }
+
+    @Override
+    public int read (MemoryBus bus, int address) {
+        return bus.readMapped(address);
+    }
+
+    @Override
+    public void write (MemoryBus bus, int address, int value) {
+        if (bus.readMapped(address) == (value & 0xFF)) {
+            return;
+        }
+        bus.writeMapped(address, value);
+        dirtyBytes++;
+
+        int line = (bus.physicalAddress(address) - vramStart) >> LINE_SHIFT;
+        if (!dirtyLines[line]) {
+            dirtyLines[line] = true;
+            dirtyLineCount++;
+            firstDirtyLine = Math.min(firstDirtyLine, line);
+            lastDirtyLine = Math.max(lastDirtyLine, line);
+        }
+    }
+
+    /**
+     * Everything needs redrawing, e.g. after video RAM was changed behind the bus
+     */
+    public void markAll () {
+        Arrays.fill(dirtyLines, true);
+        firstDirtyLine = 0;
+        lastDirtyLine = LINES - 1;
+        dirtyLineCount = LINES;
+    }
+
+    /**
+     * Called once the display has redrawn the dirty lines
+     */
+    public void clear () {
+        if (dirtyLineCount > 0) {
+            Arrays.fill(dirtyLines, firstDirtyLine, lastDirtyLine + 1, false);
+        }
+        firstDirtyLine = LINES;
+        lastDirtyLine = -1;
+        dirtyLineCount = 0;
+        dirtyBytes = 0;
+    }
+
+    public boolean isDirty () {
+        return dirtyLineCount > 0;
+    }
+
+    public boolean isLineDirty (int line) {
+        return dirtyLines[line];
+    }
+
+    /**
+     * @return first dirty line, {@link VramConverter#HEIGHT} when nothing is dirty
+     */
+    public int getFirstDirtyLine () {
+        return firstDirtyLine;
+    }
+
+    /**
+     * @return last dirty line, -1 when nothing is dirty
+     */
+    public int getLastDirtyLine () {
+        return lastDirtyLine;
+    }
+
+    public int getDirtyLineCount () {
+        return dirtyLineCount;
+    }
+
+    /**
+     * @return writes that changed a byte of video RAM since the last {@link #clear()}, a byte written twice counts
+     * twice
+     */
+    public int getDirtyBytes () {
+        return dirtyBytes;
+    }
+}
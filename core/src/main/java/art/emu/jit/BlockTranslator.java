@@ -0,0 +1,1096 @@
+package art.emu.jit;
+
+import art.emu.ConditionBits;
+import art.emu.Instruction;
+import art.emu.Registers;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emits the class file of one block.
+ * Registers, the flag byte and the stack pointer live in locals for the whole block, the ones the block reads are
+ * loaded once on entry and the ones it changes are written back on every exit. Flags that get overwritten before
+ * anything can observe them are never computed. A block ending in a jump back to its own start loops inside the
+ * generated method for as long as another full pass fits in the budget.
+ * Instructions without a translation here (DAA, I/O, interrupts, calls and returns) run through their
+ * {@link art.emu.InstructionExecutor} with the state flushed to the {@link art.emu.Processor} around them
+ */
+final class BlockTranslator implements Opcodes {
+    private static final String PROCESSOR = "art/emu/Processor";
+    private static final String MEMORY = "art/emu/MemoryBus";
+    private static final String CONDITION_FLAGS = "art/emu/ConditionFlags";
+    private static final String INSTRUCTION = "art/emu/Instruction";
+    private static final String INSTRUCTION_EXECUTOR = "art/emu/InstructionExecutor";
+    private static final String COMPILED_BLOCK = "art/emu/CompiledBlock";
+    private static final String INVALIDATED = "invalidated";
+
+    // local variable slots of execute(), registers are indexed by their opcode encoding, slot 10 (M) stays unused
+    private static final int PROCESSOR_SLOT = 1;
+    private static final int BUDGET_SLOT = 2;
+    private static final int MEMORY_SLOT = 3;
+    private static final int REGISTER_SLOT = 4;
+    private static final int FLAGS_SLOT = 12;
+    private static final int SP_SLOT = 13;
+    private static final int ADDRESS_SLOT = 14;
+    private static final int VALUE_SLOT = 15;
+    private static final int CYCLES_SLOT = 16;
+    private static final int CARRY_SLOT = 17;
+
+    private static final int M = 6;
+    private static final int A = Registers.ACCUMULATOR;
+
+    // state masks, one bit per register plus the flags and the stack pointer
+    private static final int FLAGS = 1 << 8;
+    private static final int SP = 1 << 9;
+    private static final int HL = (1 << Registers.H) | (1 << Registers.L);
+
+    // how an instruction touches the flags
+    private static final int FLAGS_NONE = 0;
+    private static final int FLAGS_READ = 1;            // Jcc, PUSH PSW
+    private static final int FLAGS_DEFINE = 2;          // every flag rewritten from the result alone
+    private static final int FLAGS_DEFINE_CARRY = 3;    // ADC, SBB, ACI, SBI: the result depends on the carry
+    private static final int FLAGS_UPDATE = 4;          // some flags rewritten, the rest kept
+    private static final int FLAGS_UPDATE_CARRY = 5;    // RAL, RAR: the result depends on the carry
+    private static final int FLAGS_BARRIER = 6;         // runs through its executor
+
+    private final int startAddress;
+    private final int endAddress;
+    private final int[] opcodes;
+    private final int[] operands;
+    private final int[] addresses;
+
+    private final int[] reads;
+    private final int[] writes;
+    private final int[] flagUse;
+    private final boolean[] writesMemory;
+    private final boolean[] computeFlags;
+    private final int[] reloadAfter;
+    private final boolean loops;
+    private int entryLoad;
+
+    private String className;
+    private MethodVisitor method;
+    private int dirty;
+    private final List<Exit> exits = new ArrayList<>();
+
+    private static final class Exit {
+        final Label label = new Label();
+        final int dirty;
+        final int programCounter;
+        final int cycles;
+
+        Exit (int dirty, int programCounter, int cycles) {
+            this.dirty = dirty;
+            this.programCounter = programCounter;
+            this.cycles = cycles;
+        }
+    }
+
+    BlockTranslator (int startAddress, int[] opcodes, int[] operands) {
+        this.startAddress = startAddress;
+        this.opcodes = opcodes;
+        this.operands = operands;
+
+        int count = opcodes.length;
+        addresses = new int[count];
+        int address = startAddress;
+        for (int i = 0; i < count; i++) {
+            addresses[i] = address;
+            address += Instruction.fromOpcode(opcodes[i]).getLength();
+        }
+        endAddress = address;
+
+        reads = new int[count];
+        writes = new int[count];
+        flagUse = new int[count];
+        writesMemory = new boolean[count];
+        computeFlags = new boolean[count];
+        reloadAfter = new int[count];
+        for (int i = 0; i < count; i++) {
+            analyze(i);
+        }
+        computeFlagLiveness();
+        computeLoads();
+
+        int last = opcodes[count - 1];
+        loops = (last == 0xC3 || (last & 0xC7) == 0xC2) && operands[count - 1] == startAddress;
+        if (loops) {
+            // every exit of a later pass has to flush what earlier passes changed, so all of it starts out loaded
+            int changed = 0;
+            for (int i = 0; i < count; i++) {
+                changed |= writes[i];
+                if (computeFlags[i] && flagUse[i] != FLAGS_NONE && flagUse[i] != FLAGS_READ) {
+                    changed |= FLAGS;
+                }
+            }
+            entryLoad |= changed;
+            dirty = changed;
+            for (int i = 0; i < count; i++) {
+                if (flagUse[i] == FLAGS_BARRIER) {
+                    reloadAfter[i] |= entryLoad; // the next pass starts from the same locals
+                }
+            }
+        }
+    }
+
+    static int maxCycles (int[] opcodes) {
+        int cycles = 0;
+        for (int opcode : opcodes) {
+            cycles += Instruction.maxCycles(opcode);
+        }
+        return cycles;
+    }
+
+    private static int bit (int register) {
+        return 1 << register;
+    }
+
+    private static int pairBits (int pair) {
+        return pair == 3 ? SP : bit(pair * 2) | bit(pair * 2 + 1);
+    }
+
+    private void analyze (int i) {
+        int opcode = opcodes[i];
+        int destination = (opcode >> 3) & 0x07;
+        int source = opcode & 0x07;
+        int pair = (opcode >> 4) & 0x03;
+        int read = 0;
+        int write = 0;
+        int flags = FLAGS_NONE;
+        boolean memory = false;
+
+        switch (opcode) {
+            case 0x00: // NOP
+                break;
+            case 0x07: case 0x0F: // RLC, RRC
+                read = write = bit(A);
+                flags = FLAGS_UPDATE;
+                break;
+            case 0x17: case 0x1F: // RAL, RAR
+                read = write = bit(A);
+                flags = FLAGS_UPDATE_CARRY;
+                break;
+            case 0x2F: // CMA
+                read = write = bit(A);
+                break;
+            case 0x37: case 0x3F: // STC, CMC
+                flags = FLAGS_UPDATE;
+                break;
+            case 0x02: case 0x12: // STAX
+                read = bit(A) | pairBits(pair);
+                memory = true;
+                break;
+            case 0x0A: case 0x1A: // LDAX
+                read = pairBits(pair);
+                write = bit(A);
+                break;
+            case 0x22: // SHLD
+                read = HL;
+                memory = true;
+                break;
+            case 0x2A: // LHLD
+                write = HL;
+                break;
+            case 0x32: // STA
+                read = bit(A);
+                memory = true;
+                break;
+            case 0x3A: // LDA
+                write = bit(A);
+                break;
+            case 0xC3: // JMP
+                break;
+            case 0xE9: // PCHL
+                read = HL;
+                break;
+            case 0xEB: // XCHG
+                read = write = HL | bit(Registers.D) | bit(Registers.E);
+                break;
+            case 0xF9: // SPHL
+                read = HL;
+                write = SP;
+                break;
+            case 0xE3: // XTHL
+                read = HL | SP;
+                write = HL;
+                memory = true;
+                break;
+            case 0xF1: // POP PSW
+                read = SP;
+                write = SP | bit(A);
+                flags = FLAGS_DEFINE;
+                break;
+            case 0xF5: // PUSH PSW
+                read = SP | bit(A);
+                write = SP;
+                flags = FLAGS_READ;
+                memory = true;
+                break;
+            default:
+                if (opcode >= 0x40 && opcode < 0x80 && opcode != 0x76) { // MOV
+                    read = source == M ? HL : bit(source);
+                    if (destination == M) {
+                        read |= HL;
+                        memory = true;
+                    } else {
+                        write = bit(destination);
+                    }
+                } else if (opcode >= 0x80 && opcode < 0xC0) { // ALU with register or M
+                    read = bit(A) | (source == M ? HL : bit(source));
+                    write = destination == 7 ? 0 : bit(A);
+                    flags = destination == 1 || destination == 3 ? FLAGS_DEFINE_CARRY : FLAGS_DEFINE;
+                } else if ((opcode & 0xC7) == 0xC6) { // ALU immediate
+                    read = bit(A);
+                    write = destination == 7 ? 0 : bit(A);
+                    flags = destination == 1 || destination == 3 ? FLAGS_DEFINE_CARRY : FLAGS_DEFINE;
+                } else if ((opcode & 0xCF) == 0x01) { // LXI
+                    write = pairBits(pair);
+                } else if ((opcode & 0xC7) == 0x03) { // INX, DCX
+                    read = write = pairBits(pair);
+                } else if ((opcode & 0xC6) == 0x04) { // INR, DCR
+                    if (destination == M) {
+                        read = HL;
+                        memory = true;
+                    } else {
+                        read = write = bit(destination);
+                    }
+                    flags = FLAGS_UPDATE;
+                } else if ((opcode & 0xC7) == 0x06) { // MVI
+                    if (destination == M) {
+                        read = HL;
+                        memory = true;
+                    } else {
+                        write = bit(destination);
+                    }
+                } else if ((opcode & 0xCF) == 0x09) { // DAD
+                    read = pairBits(pair) | HL;
+                    write = HL;
+                    flags = FLAGS_UPDATE;
+                } else if ((opcode & 0xCF) == 0xC1) { // POP
+                    read = SP;
+                    write = SP | pairBits(pair);
+                } else if ((opcode & 0xCF) == 0xC5) { // PUSH
+                    read = SP | pairBits(pair);
+                    write = SP;
+                    memory = true;
+                } else if ((opcode & 0xC7) == 0xC2) { // Jcc
+                    flags = FLAGS_READ;
+                } else {
+                    flags = FLAGS_BARRIER;
+                }
+        }
+
+        reads[i] = read;
+        writes[i] = write;
+        flagUse[i] = flags;
+        writesMemory[i] = memory;
+    }
+
+    /**
+     * Walks the block backwards to find the flag results something can still observe: a later instruction, the
+     * end of the block, or a write that may leave the block early
+     */
+    private void computeFlagLiveness () {
+        boolean live = true;
+        for (int i = opcodes.length - 1; i >= 0; i--) {
+            boolean liveOut = live || hasEarlyExit(i);
+            computeFlags[i] = liveOut || opcodes[i] == 0xF1;
+            switch (flagUse[i]) {
+                case FLAGS_DEFINE:
+                    live = false;
+                    break;
+                case FLAGS_UPDATE:
+                    live = liveOut;
+                    break;
+                case FLAGS_READ:
+                case FLAGS_DEFINE_CARRY:
+                case FLAGS_UPDATE_CARRY:
+                case FLAGS_BARRIER:
+                    live = true;
+                    break;
+                default:
+                    live = liveOut;
+            }
+        }
+    }
+
+    /**
+     * Walks the block backwards to find which locals have to be loaded from the processor on entry and after
+     * every instruction that ran through its executor
+     */
+    private void computeLoads () {
+        int needed = 0;
+        for (int i = opcodes.length - 1; i >= 0; i--) {
+            if (flagUse[i] == FLAGS_BARRIER) {
+                reloadAfter[i] = needed;
+                needed = 0;
+                continue;
+            }
+            int read = reads[i];
+            int write = writes[i];
+            switch (flagUse[i]) {
+                case FLAGS_READ:
+                case FLAGS_DEFINE_CARRY:
+                case FLAGS_UPDATE_CARRY:
+                    read |= FLAGS;
+                    break;
+                case FLAGS_DEFINE:
+                    if (computeFlags[i]) {
+                        write |= FLAGS;
+                    }
+                    break;
+                case FLAGS_UPDATE:
+                    if (computeFlags[i]) {
+                        read |= FLAGS;
+                    }
+                    break;
+            }
+            needed = (needed & ~write) | read;
+        }
+        entryLoad = needed;
+    }
+
+    private boolean hasEarlyExit (int i) {
+        return writesMemory[i] && i < opcodes.length - 1;
+    }
+
+    byte[] translate (String className) {
+        this.className = className;
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass (String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        writer.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object",
+            new String[] { COMPILED_BLOCK });
+        writer.visitField(ACC_PRIVATE, INVALIDATED, "Z", null, null).visitEnd();
+
+        MethodVisitor constructor = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor getMaxCycles = writer.visitMethod(ACC_PUBLIC, "getMaxCycles", "()I", null, null);
+        getMaxCycles.visitCode();
+        getMaxCycles.visitLdcInsn(maxCycles(opcodes));
+        getMaxCycles.visitInsn(IRETURN);
+        getMaxCycles.visitMaxs(0, 0);
+        getMaxCycles.visitEnd();
+
+        MethodVisitor invalidate = writer.visitMethod(ACC_PUBLIC, "invalidate", "()V", null, null);
+        invalidate.visitCode();
+        invalidate.visitVarInsn(ALOAD, 0);
+        invalidate.visitInsn(ICONST_1);
+        invalidate.visitFieldInsn(PUTFIELD, className, INVALIDATED, "Z");
+        invalidate.visitInsn(RETURN);
+        invalidate.visitMaxs(0, 0);
+        invalidate.visitEnd();
+
+        method = writer.visitMethod(ACC_PUBLIC, "execute", "(Lart/emu/Processor;I)I", null, null);
+        method.visitCode();
+        emitExecute();
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void emitExecute () {
+        method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+        method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "getMemory", "()Lart/emu/MemoryBus;", false);
+        method.visitVarInsn(ASTORE, MEMORY_SLOT);
+        load(entryLoad);
+
+        Label loop = new Label();
+        if (loops) {
+            method.visitInsn(ICONST_0);
+            method.visitVarInsn(ISTORE, CYCLES_SLOT);
+            method.visitLabel(loop);
+        }
+
+        int cycles = 0;
+        boolean returned = false;
+        for (int i = 0; i < opcodes.length && !returned; i++) {
+            int cyclesBefore = cycles;
+            cycles += Instruction.maxCycles(opcodes[i]);
+            int next = i + 1 < opcodes.length ? addresses[i + 1] : endAddress;
+            returned = emitInstruction(i, cyclesBefore, cycles, next, loop);
+        }
+        if (!returned) {
+            emitReturn(dirty, endAddress, cycles);
+        }
+
+        for (Exit exit : exits) {
+            method.visitLabel(exit.label);
+            emitReturn(exit.dirty, exit.programCounter, exit.cycles);
+        }
+    }
+
+    /**
+     * @return true if the emitted code already returned
+     */
+    private boolean emitInstruction (int i, int cyclesBefore, int cyclesAfter, int next, Label loop) {
+        int opcode = opcodes[i];
+        int operand = operands[i];
+        int destination = (opcode >> 3) & 0x07;
+        int source = opcode & 0x07;
+        int pair = (opcode >> 4) & 0x03;
+        boolean flags = computeFlags[i];
+        boolean exit = hasEarlyExit(i);
+
+        switch (opcode) {
+            case 0x00: // NOP
+                return false;
+            case 0x07: // RLC
+                if (flags) {
+                    updateCarry(() -> {
+                        loadRegister(A);
+                        method.visitIntInsn(BIPUSH, 7);
+                        method.visitInsn(IUSHR);
+                    });
+                }
+                loadRegister(A);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(ISHL);
+                loadRegister(A);
+                method.visitIntInsn(BIPUSH, 7);
+                method.visitInsn(IUSHR);
+                method.visitInsn(IOR);
+                storeByte(A);
+                return false;
+            case 0x0F: // RRC
+                if (flags) {
+                    updateCarry(() -> {
+                        loadRegister(A);
+                        method.visitInsn(ICONST_1);
+                        method.visitInsn(IAND);
+                    });
+                }
+                loadRegister(A);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(IAND);
+                method.visitIntInsn(BIPUSH, 7);
+                method.visitInsn(ISHL);
+                loadRegister(A);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(ISHR);
+                method.visitInsn(IOR);
+                storeByte(A);
+                return false;
+            case 0x17: // RAL
+                loadRegister(A);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(ISHL);
+                loadCarry();
+                method.visitInsn(IOR);
+                if (flags) {
+                    updateCarry(() -> {
+                        loadRegister(A);
+                        method.visitIntInsn(BIPUSH, 7);
+                        method.visitInsn(IUSHR);
+                    });
+                }
+                storeByte(A);
+                return false;
+            case 0x1F: // RAR
+                loadRegister(A);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(ISHR);
+                loadCarry();
+                method.visitIntInsn(BIPUSH, 7);
+                method.visitInsn(ISHL);
+                method.visitInsn(IOR);
+                if (flags) {
+                    updateCarry(() -> {
+                        loadRegister(A);
+                        method.visitInsn(ICONST_1);
+                        method.visitInsn(IAND);
+                    });
+                }
+                storeByte(A);
+                return false;
+            case 0x2F: // CMA
+                loadRegister(A);
+                method.visitIntInsn(SIPUSH, 0xFF);
+                method.visitInsn(IXOR);
+                storeRegister(A);
+                return false;
+            case 0x37: // STC
+                if (flags) {
+                    method.visitVarInsn(ILOAD, FLAGS_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IOR);
+                    storeFlags();
+                }
+                return false;
+            case 0x3F: // CMC
+                if (flags) {
+                    method.visitVarInsn(ILOAD, FLAGS_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IXOR);
+                    storeFlags();
+                }
+                return false;
+            case 0x02: case 0x12: // STAX
+                loadPair(pair);
+                method.visitVarInsn(ISTORE, ADDRESS_SLOT);
+                writeMemory(() -> method.visitVarInsn(ILOAD, ADDRESS_SLOT), () -> loadRegister(A));
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+                return false;
+            case 0x0A: case 0x1A: // LDAX
+                readMemory(() -> loadPair(pair));
+                storeRegister(A);
+                return false;
+            case 0x22: // SHLD
+                writeMemory(() -> method.visitLdcInsn(operand), () -> loadRegister(Registers.L));
+                writeMemory(() -> method.visitLdcInsn(operand + 1), () -> loadRegister(Registers.H));
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+                return false;
+            case 0x2A: // LHLD
+                readMemory(() -> method.visitLdcInsn(operand));
+                storeRegister(Registers.L);
+                readMemory(() -> method.visitLdcInsn(operand + 1));
+                storeRegister(Registers.H);
+                return false;
+            case 0x32: // STA
+                writeMemory(() -> method.visitLdcInsn(operand), () -> loadRegister(A));
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+                return false;
+            case 0x3A: // LDA
+                readMemory(() -> method.visitLdcInsn(operand));
+                storeRegister(A);
+                return false;
+            case 0xC3: // JMP
+                if (loops) {
+                    emitLoop(loop, cyclesAfter);
+                }
+                emitReturn(dirty, operand, cyclesAfter);
+                return true;
+            case 0xE9: // PCHL
+                flush(dirty);
+                method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+                loadPair(2);
+                method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "setProgramCounter", "(I)V", false);
+                pushCycles(cyclesAfter);
+                method.visitInsn(IRETURN);
+                return true;
+            case 0xEB: // XCHG
+                loadRegister(Registers.H);
+                loadRegister(Registers.L);
+                loadRegister(Registers.D);
+                storeRegister(Registers.H);
+                loadRegister(Registers.E);
+                storeRegister(Registers.L);
+                storeRegister(Registers.E);
+                storeRegister(Registers.D);
+                return false;
+            case 0xF9: // SPHL
+                loadPair(2);
+                storeStackPointer();
+                return false;
+            case 0xE3: // XTHL
+                readMemory(() -> method.visitVarInsn(ILOAD, SP_SLOT));
+                method.visitVarInsn(ISTORE, VALUE_SLOT);
+                readMemory(() -> {
+                    method.visitVarInsn(ILOAD, SP_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IADD);
+                });
+                writeMemory(() -> method.visitVarInsn(ILOAD, SP_SLOT), () -> loadRegister(Registers.L));
+                writeMemory(() -> {
+                    method.visitVarInsn(ILOAD, SP_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IADD);
+                }, () -> loadRegister(Registers.H));
+                storeRegister(Registers.H);
+                method.visitVarInsn(ILOAD, VALUE_SLOT);
+                storeRegister(Registers.L);
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+                return false;
+            case 0xF1: // POP PSW
+                readMemory(() -> method.visitVarInsn(ILOAD, SP_SLOT));
+                method.visitIntInsn(SIPUSH, ConditionBits.SIGN | ConditionBits.ZERO | ConditionBits.AUX_CARRY
+                    | ConditionBits.PARITY | ConditionBits.CARRY);
+                method.visitInsn(IAND);
+                method.visitInsn(ICONST_2);
+                method.visitInsn(IOR);
+                storeFlags();
+                readMemory(() -> {
+                    method.visitVarInsn(ILOAD, SP_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IADD);
+                });
+                storeRegister(A);
+                addStackPointer(2);
+                return false;
+            case 0xF5: // PUSH PSW
+                writeMemory(() -> {
+                    method.visitVarInsn(ILOAD, SP_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(ISUB);
+                }, () -> loadRegister(A));
+                writeMemory(() -> {
+                    method.visitVarInsn(ILOAD, SP_SLOT);
+                    method.visitInsn(ICONST_2);
+                    method.visitInsn(ISUB);
+                }, () -> method.visitVarInsn(ILOAD, FLAGS_SLOT));
+                addStackPointer(-2);
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+                return false;
+        }
+
+        if (opcode >= 0x40 && opcode < 0x80 && opcode != 0x76) { // MOV
+            if (destination == M) {
+                loadPair(2);
+                method.visitVarInsn(ISTORE, ADDRESS_SLOT);
+                writeMemory(() -> method.visitVarInsn(ILOAD, ADDRESS_SLOT), () -> loadRegister(source));
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+            } else if (source == M) {
+                readMemory(() -> loadPair(2));
+                storeRegister(destination);
+            } else if (source != destination) {
+                loadRegister(source);
+                storeRegister(destination);
+            }
+            return false;
+        }
+        if (opcode >= 0x80 && opcode < 0xC0) { // ALU with register or M
+            if (source == M) {
+                readMemory(() -> loadPair(2));
+            } else {
+                loadRegister(source);
+            }
+            emitArithmetic(destination, flags);
+            return false;
+        }
+        if ((opcode & 0xC7) == 0xC6) { // ALU immediate
+            method.visitLdcInsn(operand);
+            emitArithmetic(destination, flags);
+            return false;
+        }
+        if ((opcode & 0xCF) == 0x01) { // LXI
+            if (pair == 3) {
+                method.visitLdcInsn(operand);
+                storeStackPointer();
+            } else {
+                method.visitLdcInsn((operand >> 8) & 0xFF);
+                storeRegister(pair * 2);
+                method.visitLdcInsn(operand & 0xFF);
+                storeRegister(pair * 2 + 1);
+            }
+            return false;
+        }
+        if ((opcode & 0xC7) == 0x03) { // INX, DCX
+            boolean increment = (opcode & 0x08) == 0;
+            if (pair == 3) {
+                method.visitVarInsn(ILOAD, SP_SLOT);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(increment ? IADD : ISUB);
+                method.visitLdcInsn(0xFFFF);
+                method.visitInsn(IAND);
+                storeStackPointer();
+            } else {
+                loadPair(pair);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(increment ? IADD : ISUB);
+                storePair(pair);
+            }
+            return false;
+        }
+        if ((opcode & 0xC6) == 0x04) { // INR, DCR
+            boolean increment = (opcode & 0x01) == 0;
+            if (destination == M) {
+                loadPair(2);
+                method.visitVarInsn(ISTORE, ADDRESS_SLOT);
+                readMemory(() -> method.visitVarInsn(ILOAD, ADDRESS_SLOT));
+                method.visitVarInsn(ISTORE, VALUE_SLOT);
+                if (flags) {
+                    stepFlags(() -> method.visitVarInsn(ILOAD, VALUE_SLOT), increment);
+                }
+                writeMemory(() -> method.visitVarInsn(ILOAD, ADDRESS_SLOT), () -> {
+                    method.visitVarInsn(ILOAD, VALUE_SLOT);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(increment ? IADD : ISUB);
+                    method.visitIntInsn(SIPUSH, 0xFF);
+                    method.visitInsn(IAND);
+                });
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+            } else {
+                if (flags) {
+                    stepFlags(() -> loadRegister(destination), increment);
+                }
+                loadRegister(destination);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(increment ? IADD : ISUB);
+                storeByte(destination);
+            }
+            return false;
+        }
+        if ((opcode & 0xC7) == 0x06) { // MVI
+            if (destination == M) {
+                loadPair(2);
+                method.visitVarInsn(ISTORE, ADDRESS_SLOT);
+                writeMemory(() -> method.visitVarInsn(ILOAD, ADDRESS_SLOT), () -> method.visitLdcInsn(operand));
+                if (exit) {
+                    exitIfInvalidated(next, cyclesAfter);
+                }
+            } else {
+                method.visitLdcInsn(operand & 0xFF);
+                storeRegister(destination);
+            }
+            return false;
+        }
+        if ((opcode & 0xCF) == 0x09) { // DAD
+            if (pair == 3) {
+                method.visitVarInsn(ILOAD, SP_SLOT);
+            } else {
+                loadPair(pair);
+            }
+            loadPair(2);
+            method.visitInsn(IADD);
+            method.visitVarInsn(ISTORE, VALUE_SLOT);
+            method.visitVarInsn(ILOAD, VALUE_SLOT);
+            storePair(2);
+            if (flags) {
+                // carry when the sum is above 0xFFFF, the sign of (0xFFFF - sum) without a branch
+                updateCarry(() -> {
+                    method.visitLdcInsn(0xFFFF);
+                    method.visitVarInsn(ILOAD, VALUE_SLOT);
+                    method.visitInsn(ISUB);
+                    method.visitIntInsn(BIPUSH, 31);
+                    method.visitInsn(IUSHR);
+                });
+            }
+            return false;
+        }
+        if ((opcode & 0xCF) == 0xC1) { // POP
+            readMemory(() -> method.visitVarInsn(ILOAD, SP_SLOT));
+            storeRegister(pair * 2 + 1);
+            readMemory(() -> {
+                method.visitVarInsn(ILOAD, SP_SLOT);
+                method.visitInsn(ICONST_1);
+                method.visitInsn(IADD);
+            });
+            storeRegister(pair * 2);
+            addStackPointer(2);
+            return false;
+        }
+        if ((opcode & 0xCF) == 0xC5) { // PUSH
+            addStackPointer(-1);
+            writeMemory(() -> method.visitVarInsn(ILOAD, SP_SLOT), () -> loadRegister(pair * 2));
+            addStackPointer(-1);
+            writeMemory(() -> method.visitVarInsn(ILOAD, SP_SLOT), () -> loadRegister(pair * 2 + 1));
+            if (exit) {
+                exitIfInvalidated(next, cyclesAfter);
+            }
+            return false;
+        }
+        if ((opcode & 0xC7) == 0xC2) { // Jcc
+            Label taken = new Label();
+            method.visitVarInsn(ILOAD, FLAGS_SLOT);
+            method.visitIntInsn(SIPUSH, conditionBit(destination));
+            method.visitInsn(IAND);
+            method.visitJumpInsn((destination & 0x01) == 0 ? IFEQ : IFNE, taken);
+            emitReturn(dirty, next, cyclesAfter);
+            method.visitLabel(taken);
+            if (loops) {
+                emitLoop(loop, cyclesAfter);
+            }
+            emitReturn(dirty, operand, cyclesAfter);
+            return true;
+        }
+
+        // everything else goes through the interpreter's executor
+        flush(dirty);
+        dirty = 0;
+        method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+        method.visitLdcInsn(addresses[i]);
+        method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "setProgramCounter", "(I)V", false);
+        method.visitLdcInsn(opcode);
+        method.visitMethodInsn(INVOKESTATIC, INSTRUCTION, "executorFor", "(I)Lart/emu/InstructionExecutor;", false);
+        method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+        method.visitLdcInsn(operand);
+        method.visitMethodInsn(INVOKEINTERFACE, INSTRUCTION_EXECUTOR, "execute", "(Lart/emu/Processor;I)I", true);
+        if (i == opcodes.length - 1) {
+            // the executor set the program counter and its cycles may depend on a condition
+            pushCycles(cyclesBefore);
+            method.visitInsn(IADD);
+            method.visitInsn(IRETURN);
+            return true;
+        }
+        method.visitInsn(POP);
+        load(reloadAfter[i]);
+        return false;
+    }
+
+    /**
+     * The operand is on the stack. ADD ADC SUB SBB ANA XRA ORA CMP in opcode order, ADC and SBB take the carry as a
+     * third operand like the interpreter does
+     */
+    private void emitArithmetic (int operation, boolean flags) {
+        boolean withCarry = operation == 1 || operation == 3;
+        method.visitVarInsn(ISTORE, VALUE_SLOT);
+        if (withCarry) {
+            // read before the flags are overwritten
+            loadCarry();
+            method.visitVarInsn(ISTORE, CARRY_SLOT);
+        }
+
+        switch (operation) {
+            case 0: case 1: case 2: case 3: case 7:
+                String helper = operation < 2 ? "additionFlags" : "subtractionFlags";
+                if (flags) {
+                    loadRegister(A);
+                    method.visitVarInsn(ILOAD, VALUE_SLOT);
+                    if (withCarry) {
+                        method.visitVarInsn(ILOAD, CARRY_SLOT);
+                    } else {
+                        method.visitInsn(ICONST_0);
+                    }
+                    method.visitMethodInsn(INVOKESTATIC, CONDITION_FLAGS, helper, "(III)I", false);
+                    storeFlags();
+                }
+                if (operation != 7) {
+                    loadRegister(A);
+                    method.visitVarInsn(ILOAD, VALUE_SLOT);
+                    method.visitInsn(operation < 2 ? IADD : ISUB);
+                    if (withCarry) {
+                        method.visitVarInsn(ILOAD, CARRY_SLOT);
+                        method.visitInsn(operation < 2 ? IADD : ISUB);
+                    }
+                    storeByte(A);
+                }
+                break;
+            default:
+                loadRegister(A);
+                method.visitVarInsn(ILOAD, VALUE_SLOT);
+                method.visitInsn(operation == 4 ? IAND : operation == 5 ? IXOR : IOR);
+                storeRegister(A);
+                if (flags) {
+                    loadRegister(A);
+                    method.visitMethodInsn(INVOKESTATIC, CONDITION_FLAGS, "logicFlags", "(I)I", false);
+                    storeFlags();
+                }
+        }
+    }
+
+    private void stepFlags (Runnable value, boolean increment) {
+        value.run();
+        loadCarry();
+        method.visitMethodInsn(INVOKESTATIC, CONDITION_FLAGS, increment ? "incrementFlags" : "decrementFlags",
+            "(II)I", false);
+        storeFlags();
+    }
+
+    /**
+     * Replaces the carry with the 0 or 1 pushed by the argument
+     */
+    private void updateCarry (Runnable carry) {
+        method.visitVarInsn(ILOAD, FLAGS_SLOT);
+        method.visitIntInsn(SIPUSH, ~ConditionBits.CARRY & 0xFF);
+        method.visitInsn(IAND);
+        carry.run();
+        method.visitInsn(IOR);
+        storeFlags();
+    }
+
+    private void loadCarry () {
+        method.visitVarInsn(ILOAD, FLAGS_SLOT);
+        method.visitInsn(ICONST_1);
+        method.visitInsn(IAND);
+    }
+
+    private static int conditionBit (int condition) {
+        switch (condition >> 1) {
+            case 0:
+                return ConditionBits.ZERO;
+            case 1:
+                return ConditionBits.CARRY;
+            case 2:
+                return ConditionBits.PARITY;
+            default:
+                return ConditionBits.SIGN;
+        }
+    }
+
+    private void readMemory (Runnable address) {
+        method.visitVarInsn(ALOAD, MEMORY_SLOT);
+        address.run();
+        method.visitMethodInsn(INVOKEVIRTUAL, MEMORY, "readMemory", "(I)I", false);
+    }
+
+    private void writeMemory (Runnable address, Runnable value) {
+        method.visitVarInsn(ALOAD, MEMORY_SLOT);
+        address.run();
+        value.run();
+        method.visitMethodInsn(INVOKEVIRTUAL, MEMORY, "writeMemory", "(II)V", false);
+    }
+
+    /**
+     * Leaves the block when the write just made dropped it from the {@link art.emu.BlockCache}, the rest of the
+     * block may have been overwritten
+     */
+    private void exitIfInvalidated (int next, int cycles) {
+        Exit exit = new Exit(dirty, next, cycles);
+        exits.add(exit);
+        method.visitVarInsn(ALOAD, 0);
+        method.visitFieldInsn(GETFIELD, className, INVALIDATED, "Z");
+        method.visitJumpInsn(IFNE, exit.label);
+    }
+
+    private void emitReturn (int dirty, int programCounter, int cycles) {
+        flush(dirty);
+        method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+        method.visitLdcInsn(programCounter);
+        method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "setProgramCounter", "(I)V", false);
+        pushCycles(cycles);
+        method.visitInsn(IRETURN);
+    }
+
+    /**
+     * Counts the finished pass and goes round again if another one fits in the budget, otherwise takes the count
+     * back and falls through to the return of the taken jump
+     */
+    private void emitLoop (Label loop, int passCycles) {
+        method.visitIincInsn(CYCLES_SLOT, passCycles);
+        method.visitVarInsn(ILOAD, BUDGET_SLOT);
+        method.visitVarInsn(ILOAD, CYCLES_SLOT);
+        method.visitInsn(ISUB);
+        method.visitLdcInsn(maxCycles(opcodes));
+        method.visitJumpInsn(IF_ICMPGE, loop);
+        method.visitIincInsn(CYCLES_SLOT, -passCycles);
+    }
+
+    /**
+     * Pushes the cycles of the current pass plus the ones of all earlier passes
+     */
+    private void pushCycles (int cycles) {
+        method.visitLdcInsn(cycles);
+        if (loops) {
+            method.visitVarInsn(ILOAD, CYCLES_SLOT);
+            method.visitInsn(IADD);
+        }
+    }
+
+    private void load (int state) {
+        for (int register = 0; register < 8; register++) {
+            if ((state & bit(register)) != 0) {
+                method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+                method.visitIntInsn(BIPUSH, register);
+                method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "getRegisterValue", "(I)I", false);
+                method.visitVarInsn(ISTORE, REGISTER_SLOT + register);
+            }
+        }
+        if ((state & FLAGS) != 0) {
+            method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+            method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "getConditionFlags", "()Lart/emu/ConditionFlags;", false);
+            method.visitMethodInsn(INVOKEVIRTUAL, CONDITION_FLAGS, "getBits", "()I", false);
+            method.visitVarInsn(ISTORE, FLAGS_SLOT);
+        }
+        if ((state & SP) != 0) {
+            method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+            method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "getStackPointer", "()I", false);
+            method.visitVarInsn(ISTORE, SP_SLOT);
+        }
+    }
+
+    private void flush (int state) {
+        for (int register = 0; register < 8; register++) {
+            if ((state & bit(register)) != 0) {
+                method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+                method.visitIntInsn(BIPUSH, register);
+                method.visitVarInsn(ILOAD, REGISTER_SLOT + register);
+                method.visitInsn(I2B);
+                method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "writeRegisterValue", "(IB)V", false);
+            }
+        }
+        if ((state & FLAGS) != 0) {
+            method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+            method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "getConditionFlags", "()Lart/emu/ConditionFlags;", false);
+            method.visitVarInsn(ILOAD, FLAGS_SLOT);
+            method.visitMethodInsn(INVOKEVIRTUAL, CONDITION_FLAGS, "setFromByte", "(I)V", false);
+        }
+        if ((state & SP) != 0) {
+            method.visitVarInsn(ALOAD, PROCESSOR_SLOT);
+            method.visitVarInsn(ILOAD, SP_SLOT);
+            method.visitMethodInsn(INVOKEVIRTUAL, PROCESSOR, "setStackPointer", "(I)V", false);
+        }
+    }
+
+    private void loadRegister (int register) {
+        method.visitVarInsn(ILOAD, REGISTER_SLOT + register);
+    }
+
+    private void storeRegister (int register) {
+        method.visitVarInsn(ISTORE, REGISTER_SLOT + register);
+        dirty |= bit(register);
+    }
+
+    private void storeByte (int register) {
+        method.visitIntInsn(SIPUSH, 0xFF);
+        method.visitInsn(IAND);
+        storeRegister(register);
+    }
+
+    private void storeFlags () {
+        method.visitVarInsn(ISTORE, FLAGS_SLOT);
+        dirty |= FLAGS;
+    }
+
+    private void storeStackPointer () {
+        method.visitVarInsn(ISTORE, SP_SLOT);
+        dirty |= SP;
+    }
+
+    private void addStackPointer (int delta) {
+        method.visitVarInsn(ILOAD, SP_SLOT);
+        method.visitLdcInsn(delta);
+        method.visitInsn(IADD);
+        method.visitLdcInsn(0xFFFF);
+        method.visitInsn(IAND);
+        storeStackPointer();
+    }
+
+    private void loadPair (int pair) {
+        loadRegister(pair * 2);
+        method.visitIntInsn(BIPUSH, 8);
+        method.visitInsn(ISHL);
+        loadRegister(pair * 2 + 1);
+        method.visitInsn(IOR);
+    }
+
+    /**
+     * Splits the 16 bit value on the stack into the pair, bits above 15 are dropped
+     */
+    private void storePair (int pair) {
+        method.visitInsn(DUP);
+        method.visitIntInsn(BIPUSH, 8);
+        method.visitInsn(ISHR);
+        storeByte(pair * 2);
+        storeByte(pair * 2 + 1);
+    }
+}
@@ -0,0 +1,35 @@
+package art.emu.jit;
+
+import art.emu.BlockCompiler;
+import art.emu.CompiledBlock;
+import art.emu.Instruction;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Compiles blocks to JVM bytecode, every block becomes its own hidden class so HotSpot compiles it like any other
+ * method and can unload it again once the cache drops the block
+ */
+public class JitCompiler implements BlockCompiler {
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    @Override
+    public CompiledBlock compile (int startAddress, int[] opcodes, int[] operands) {
+        for (int opcode : opcodes) {
+            if (Instruction.fromOpcode(opcode) == null) {
+                return null; // leave undefined opcodes to the interpreter so they fail the same way
+            }
+        }
+
+        String className = "art/emu/jit/Block" + Integer.toHexString(startAddress).toUpperCase();
+        byte[] classFile = new BlockTranslator(startAddress, opcodes, operands).translate(className);
+        try {
+            MethodHandles.Lookup blockLookup = lookup.defineHiddenClass(classFile, true);
+            return (CompiledBlock) blockLookup.findConstructor(blockLookup.lookupClass(), MethodType.methodType(void.class))
+                .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to load block at 0x" + Integer.toHexString(startAddress), e);
+        }
+    }
+}
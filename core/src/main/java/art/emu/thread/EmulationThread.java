@@ -0,0 +1,126 @@
+package art.emu.thread;
+
+import art.emu.invaders.FrameProducer;
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.invaders.SpaceInvadersMachine.Input;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the machine at 60 frames a second on a thread of its own, so emulation and rendering overlap and neither
+ * waits for the other. Finished frames go to the render thread through a {@link TripleBuffer}, input comes back
+ * through a lock free ring of packed changes and is applied between frames
+ */
+public class EmulationThread implements FrameProducer, Runnable {
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    // further behind than this and the missed frames are dropped, same as the render loop does
+    private static final long MAX_LAG_NANOS = 250_000_000L;
+
+    private static final Input[] INPUTS = Input.values();
+    // far more key changes than anyone makes in a frame
+    private static final int INPUT_RING_SIZE = 64;
+
+    private final TripleBuffer<byte[]> frames = new TripleBuffer<>(new byte[SpaceInvadersMachine.V_RAM_SIZE],
+        new byte[SpaceInvadersMachine.V_RAM_SIZE], new byte[SpaceInvadersMachine.V_RAM_SIZE]);
+    // changes as the input's ordinal shifted left by one and the pressed bit. The render thread is the only one
+    // writing entries and counting them in inputsWritten, the emulation thread the only one counting inputsRead
+    private final int[] inputRing = new int[INPUT_RING_SIZE];
+    private final AtomicInteger inputsWritten = new AtomicInteger();
+    private final AtomicInteger inputsRead = new AtomicInteger();
+
+    private SpaceInvadersMachine machine;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+    private volatile long frameCount;
+
+    @Override
+    public void start (SpaceInvadersMachine machine) {
+        if (thread != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.machine = machine;
+        running = true;
+        thread = new Thread(this, "Emulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run () {
+        try {
+            long nextFrame = System.nanoTime();
+            while (running) {
+                int read = inputsRead.get();
+                for (int written = inputsWritten.get(); read != written; read++) {
+                    int change = inputRing[read & (INPUT_RING_SIZE - 1)];
+                    machine.setInput(INPUTS[change >> 1], (change & 1) != 0);
+                }
+                inputsRead.lazySet(read);
+
+                machine.runFrame();
+                machine.copyVram(frames.back());
+                machine.getVramTracker().clear();
+                frames.publish();
+                frameCount++;
+
+                nextFrame += FRAME_NANOS;
+                long wait = nextFrame - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (-wait > MAX_LAG_NANOS) {
+                    nextFrame = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Nothing is allocated. With the ring full the change is dropped, which only happens once the emulation thread
+     * has stopped taking them
+     */
+    @Override
+    public void setInput (Input input, boolean pressed) {
+        int written = inputsWritten.get();
+        if (written - inputsRead.get() == INPUT_RING_SIZE) {
+            return;
+        }
+        inputRing[written & (INPUT_RING_SIZE - 1)] = input.ordinal() << 1 | (pressed ? 1 : 0);
+        // publishes the entry to the emulation thread
+        inputsWritten.lazySet(written + 1);
+    }
+
+    @Override
+    public byte[] latestFrame () {
+        if (failure != null) {
+            throw new IllegalStateException("Emulation thread stopped", failure);
+        }
+        return frames.acquire();
+    }
+
+    @Override
+    public void stop () {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getFrameCount () {
+        return frameCount;
+    }
+
+    @Override
+    public String toString () {
+        return "EmulationThread[frames=" + frameCount + "]";
+    }
+}
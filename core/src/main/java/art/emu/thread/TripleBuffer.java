@@ -0,0 +1,59 @@
+package art.emu.thread;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the newest of a stream of buffers from one producer thread to one consumer thread without locks and without
+ * either side ever waiting. The producer fills its back buffer and swaps it with the middle one, the consumer swaps
+ * its front buffer with the middle one when that holds something newer. Frames the consumer was too slow for are
+ * overwritten, never queued
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    // T[] can't be created from three Ts, the casts back are safe as only Ts go in
+    private final Object[] buffers;
+    // index of the middle buffer, FRESH set while it holds a buffer the consumer hasn't taken yet
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // producer only
+    private int front = 2; // consumer only
+
+    /**
+     * The three buffers, swapped around but never copied
+     */
+    public TripleBuffer (T first, T second, T third) {
+        buffers = new Object[] { first, second, third };
+    }
+
+    /**
+     * @return buffer the producer may fill, it isn't seen by the consumer until {@link #publish()}
+     */
+    public T back () {
+        return buffer(back);
+    }
+
+    /**
+     * Makes the filled back buffer the newest and gives the producer a new back buffer
+     */
+    public void publish () {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * @return newest published buffer, or null if nothing was published since the last call. The consumer owns it
+     * until the next call that doesn't return null
+     */
+    public T acquire () {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return buffer(front);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T buffer (int index) {
+        return (T) buffers[index];
+    }
+}
@@ -0,0 +1,104 @@
+package art.emu;
+
+import art.emu.jit.JitCompiler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class BlockCacheTest {
+    private static final int MVI_A = 0x3E, HLT = 0x76, LDA = 0x3A, ANA_A = 0xA7, JZ = 0xCA;
+    private static final int LXI_H = 0x21, INR_M = 0x34, JMP = 0xC3, OUT = 0xD3;
+
+    // 8K of RAM mirrored over the whole address space, code at 0x0100 also runs from 0x2100, 0x4100...
+    private final MemoryBus memory = new MemoryBus(0x2000);
+    private final Processor processor = new Processor(memory, new ConditionFlags());
+    private final BlockCache blockCache = new BlockCache(memory);
+
+    private int runFrom (int address) {
+        processor.setProgramCounter(address);
+        blockCache.execute(processor, 7);
+        return processor.getRegisterValue(Registers.ACCUMULATOR);
+    }
+
+    @Test
+    void writeThroughOneMirrorDropsBlocksOfAnother () {
+        memory.writeMemory(0x0100, MVI_A);
+        memory.writeMemory(0x0101, 0x11);
+        memory.writeMemory(0x0102, HLT);
+        assertEquals(0x11, runFrom(0x4100));
+        assertEquals(0x11, runFrom(0x0100));
+
+        memory.writeMemory(0x2101, 0x22);
+        assertEquals(0x22, runFrom(0x4100));
+        assertEquals(0x22, runFrom(0x0100));
+        assertEquals(2, blockCache.getInvalidations());
+    }
+
+    @Test
+    void writeDropsBlocksRunningIntoTheMirroredPage () {
+        // MVI A starts at the end of one page, its operand is the first byte of the next
+        memory.writeMemory(0x01FF, MVI_A);
+        memory.writeMemory(0x0200, 0x33);
+        memory.writeMemory(0x0201, HLT);
+        assertEquals(0x33, runFrom(0x61FF));
+
+        memory.writeMemory(0x0200, 0x44);
+        assertEquals(0x44, runFrom(0x61FF));
+    }
+
+    @Test
+    void idleLoopIsSkippedWithACompilerInstalled () {
+        // LDA 0x1000, ANA A, JZ 0x0100: 13 + 4 + 10 cycles a pass while 0x1000 holds 0
+        int[] loop = { LDA, 0x00, 0x10, ANA_A, JZ, 0x00, 0x01 };
+        for (int i = 0; i < loop.length; i++) {
+            memory.writeMemory(0x0100 + i, loop[i]);
+        }
+        blockCache.setCompiler((startAddress, opcodes, operands) -> fail("idle loop compiled"), 1);
+        processor.setProgramCounter(0x0100);
+
+        assertEquals(27 * 1000, blockCache.execute(processor, 27 * 1000));
+        assertEquals(27 * 999, blockCache.getSkippedCycles());
+        assertEquals(0x0100, processor.getProgramCounter());
+    }
+
+    private void write (int address, int... bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            memory.writeMemory(address + i, bytes[i]);
+        }
+    }
+
+    @Test
+    void compiledLoopsCountEveryInstruction () {
+        // LXI H 0x1000, then INR M, JMP back to the INR: 30 cycles once and 20 a pass
+        write(0x0100, LXI_H, 0x00, 0x10, INR_M, JMP, 0x03, 0x01);
+        blockCache.setCompiler(new JitCompiler(), 1);
+        processor.setProgramCounter(0x0100);
+
+        assertEquals(30 + 20 * 999, blockCache.execute(processor, 30 + 20 * 999));
+        assertEquals(3 + 2 * 999, blockCache.getInstructions());
+        assertEquals(30 + 20 * 999, blockCache.getCycles());
+        assertEquals(1000 & 0xFF, memory.readMemory(0x1000));
+    }
+
+    @Test
+    void stopEndsTheRunAfterTheBlock () {
+        // MVI A 1, OUT 0, JMP back to the start
+        write(0x0100, MVI_A, 0x01, OUT, 0x00, JMP, 0x00, 0x01);
+        processor.setHardwareIOExecutor(new Processor.HardwareIOExecutor() {
+            @Override
+            public void hardwareIN (Processor processor, int port) {
+            }
+
+            @Override
+            public void hardwareOUT (Processor processor, int port) {
+                blockCache.stop();
+            }
+        });
+        processor.setProgramCounter(0x0100);
+
+        assertEquals(7 + 10, blockCache.execute(processor, 1000));
+        assertEquals(0x0104, processor.getProgramCounter());
+        assertEquals(2, blockCache.getInstructions());
+    }
+}
@@ -0,0 +1,153 @@
+package art.emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The table driven flags against the flag by flag computation they replaced, for every operand pair and both carries.
+ * The reference sets each flag with {@link ConditionFlags#setFlag(int, boolean)} the way Processor did before the
+ * tables, except for the aux carry of subtractions: the 8080 adds the complement of the operand and sets it from the
+ * carry out of bit 3 of that addition
+ */
+class ConditionFlagsTest {
+    // flag bytes the operations start from, everything clear and everything set
+    private static final int[] PREVIOUS = { 0x00, 0xFF };
+
+    private static int reference (int previous, Consumer<ConditionFlags> flags) {
+        ConditionFlags reference = new ConditionFlags();
+        reference.setFromByte(previous);
+        flags.accept(reference);
+        return reference.getBits();
+    }
+
+    private static void setResultFlags (ConditionFlags flags, int result) {
+        flags.setFlag(ConditionBits.SIGN, (result & 0x80) != 0);
+        flags.setFlag(ConditionBits.ZERO, (result & 0xFF) == 0);
+        flags.setFlag(ConditionBits.PARITY, BitUtils.checkParity(result));
+    }
+
+    private static int referenceAddition (int previous, int a1, int a2, int carry) {
+        return reference(previous, flags -> {
+            int result = a1 + a2 + carry;
+            setResultFlags(flags, result);
+            flags.setFlag(ConditionBits.CARRY, result > 0xFF);
+            flags.setFlag(ConditionBits.AUX_CARRY, ((a1 & 0x0F) + (a2 & 0x0F) + carry) > 0x0F);
+        });
+    }
+
+    private static int referenceSubtraction (int previous, int a1, int a2, int borrow) {
+        return reference(previous, flags -> {
+            setResultFlags(flags, a1 - a2 - borrow);
+            flags.setFlag(ConditionBits.CARRY, a1 < a2 + borrow);
+            flags.setFlag(ConditionBits.AUX_CARRY, ((a1 & 0x0F) + (~a2 & 0x0F) + 1 - borrow) > 0x0F);
+        });
+    }
+
+    private static int referenceLogic (int previous, int result) {
+        return reference(previous, flags -> {
+            setResultFlags(flags, result);
+            flags.setFlag(ConditionBits.CARRY, false);
+            flags.setFlag(ConditionBits.AUX_CARRY, false);
+        });
+    }
+
+    private static int referenceIncrement (int previous, int value) {
+        return reference(previous, flags -> {
+            setResultFlags(flags, value + 1);
+            flags.setFlag(ConditionBits.AUX_CARRY, ((value & 0x0F) + 1) > 0x0F);
+        });
+    }
+
+    private static int referenceDecrement (int previous, int value) {
+        return reference(previous, flags -> {
+            setResultFlags(flags, value - 1);
+            flags.setFlag(ConditionBits.AUX_CARRY, (value & 0x0F) != 0);
+        });
+    }
+
+    // ADC, SBB, ACI and SBI take the carry in as a third operand
+    @Test
+    void additionAndSubtractionMatchTheReference () {
+        for (int a1 = 0; a1 <= 0xFF; a1++) {
+            for (int a2 = 0; a2 <= 0xFF; a2++) {
+                for (int carry = 0; carry <= 1; carry++) {
+                    assertEquals(referenceAddition(0, a1, a2, carry), ConditionFlags.additionFlags(a1, a2, carry),
+                        "ADD " + a1 + " + " + a2 + " + " + carry);
+                    assertEquals(referenceSubtraction(0, a1, a2, carry), ConditionFlags.subtractionFlags(a1, a2, carry),
+                        "SUB " + a1 + " - " + a2 + " - " + carry);
+                }
+            }
+        }
+    }
+
+    @Test
+    void logicMatchesTheReference () {
+        for (int a1 = 0; a1 <= 0xFF; a1++) {
+            for (int a2 = 0; a2 <= 0xFF; a2++) {
+                assertEquals(referenceLogic(0, a1 & a2), ConditionFlags.logicFlags(a1 & a2), "ANA " + a1 + ", " + a2);
+                assertEquals(referenceLogic(0, a1 ^ a2), ConditionFlags.logicFlags(a1 ^ a2), "XRA " + a1 + ", " + a2);
+                assertEquals(referenceLogic(0, a1 | a2), ConditionFlags.logicFlags(a1 | a2), "ORA " + a1 + ", " + a2);
+            }
+        }
+    }
+
+    @Test
+    void incrementAndDecrementKeepTheCarry () {
+        for (int value = 0; value <= 0xFF; value++) {
+            for (int carry = 0; carry <= ConditionBits.CARRY; carry++) {
+                assertEquals(referenceIncrement(carry, value), ConditionFlags.incrementFlags(value, carry),
+                    "INR " + value + " carry " + carry);
+                assertEquals(referenceDecrement(carry, value), ConditionFlags.decrementFlags(value, carry),
+                    "DCR " + value + " carry " + carry);
+            }
+        }
+    }
+
+    @Test
+    void eagerFlagsMatchTheReference () {
+        checkInstances(ConditionFlags::new);
+    }
+
+    @Test
+    void lazyFlagsMatchTheReference () {
+        checkInstances(LazyConditionFlags::new);
+    }
+
+    // the setFrom methods Processor calls, starting from different flags every time
+    private static void checkInstances (Supplier<ConditionFlags> factory) {
+        ConditionFlags flags = factory.get();
+        for (int previous : PREVIOUS) {
+            for (int a1 = 0; a1 <= 0xFF; a1++) {
+                for (int a2 = 0; a2 <= 0xFF; a2++) {
+                    for (int carry = 0; carry <= 1; carry++) {
+                        flags.setFromByte(previous);
+                        flags.setFromAddition(a1, a2, carry);
+                        assertEquals(referenceAddition(previous, a1, a2, carry), flags.getBits(),
+                            "ADD " + a1 + " + " + a2 + " + " + carry);
+
+                        flags.setFromByte(previous);
+                        flags.setFromSubtraction(a1, a2, carry);
+                        assertEquals(referenceSubtraction(previous, a1, a2, carry), flags.getBits(),
+                            "SUB " + a1 + " - " + a2 + " - " + carry);
+                    }
+                }
+
+                flags.setFromByte(previous);
+                flags.setFromLogic(a1);
+                assertEquals(referenceLogic(previous, a1), flags.getBits(), "logic " + a1);
+
+                flags.setFromByte(previous);
+                flags.setFromIncrement(a1);
+                assertEquals(referenceIncrement(previous, a1), flags.getBits(), "INR " + a1);
+
+                flags.setFromByte(previous);
+                flags.setFromDecrement(a1);
+                assertEquals(referenceDecrement(previous, a1), flags.getBits(), "DCR " + a1);
+            }
+        }
+    }
+}
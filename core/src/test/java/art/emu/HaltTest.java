@@ -0,0 +1,73 @@
+package art.emu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HLT keeps the program counter on itself and waits until an interrupt resumes after it, through the block cache and
+ * through {@link Processor#runCycles(int)} alike
+ */
+class HaltTest {
+    private static final int EI = 0xFB, MVI_A = 0x3E, MVI_B = 0x06, INR_A = 0x3C, HLT = 0x76, RET = 0xC9;
+
+    private final MemoryBus memory = new MemoryBus(0x2000);
+    private final Processor processor = new Processor(memory, new ConditionFlags());
+    private final BlockCache blockCache = new BlockCache(memory);
+
+    HaltTest () {
+        // EI, MVI A 3CH, HLT, then MVI B 55H and HLT again. The operand of MVI A is INR A
+        write(0x0100, EI, MVI_A, INR_A, HLT, MVI_B, 0x55, HLT);
+        // RST 1: INR A, EI, RET
+        write(0x0008, INR_A, EI, RET);
+        processor.setStackPointer(0x1000);
+        processor.setProgramCounter(0x0100);
+    }
+
+    private void write (int address, int... bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            memory.writeMemory(address + i, bytes[i]);
+        }
+    }
+
+    @Test
+    void blockCacheWaitsOnTheHlt () {
+        assertEquals(1000, blockCache.execute(processor, 1000));
+        assertHaltedOnTheFirstHlt();
+        assertEquals(500, blockCache.execute(processor, 500));
+        assertHaltedOnTheFirstHlt();
+    }
+
+    @Test
+    void runCyclesWaitsOnTheHlt () {
+        assertEquals(1000, processor.runCycles(1000));
+        assertHaltedOnTheFirstHlt();
+        assertEquals(7, processor.step());
+        assertHaltedOnTheFirstHlt();
+    }
+
+    @Test
+    void interruptResumesAfterTheHlt () {
+        blockCache.execute(processor, 1000);
+        processor.requestInterrupt(1);
+
+        assertEquals(11, processor.acceptInterrupt());
+        assertFalse(processor.isHalted());
+        assertEquals(0x0008, processor.getProgramCounter());
+        assertEquals(0x0104, memory.readMemory(0x0FFE) | memory.readMemory(0x0FFF) << 8);
+
+        assertEquals(1000, blockCache.execute(processor, 1000));
+        assertEquals(0x3D, processor.getRegisterValue(Registers.ACCUMULATOR));
+        assertEquals(0x55, processor.getRegisterValue(Registers.B));
+        assertEquals(0x0106, processor.getProgramCounter());
+        assertTrue(processor.isHalted());
+    }
+
+    private void assertHaltedOnTheFirstHlt () {
+        assertTrue(processor.isHalted());
+        assertEquals(0x0103, processor.getProgramCounter());
+        assertEquals(0x3C, processor.getRegisterValue(Registers.ACCUMULATOR));
+    }
+}
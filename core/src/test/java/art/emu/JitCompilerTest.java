@@ -0,0 +1,220 @@
+package art.emu;
+
+import art.emu.jit.JitCompiler;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Blocks compiled by {@link JitCompiler} against the interpreter stepping through the same instructions from the same
+ * state: random blocks of every defined opcode, and blocks starting at every address of the Space Invaders ROM.
+ * The code sits in ROM so nothing a block writes changes it. Registers, flags, the stack pointer, the program
+ * counter, RAM, the ports written and the cycles all have to come out the same
+ */
+class JitCompilerTest {
+    private static final int ROM_SIZE = 0x2000, RAM_SIZE = 0x2000;
+    private static final int MAX_BLOCK_INSTRUCTIONS = 32;
+    private static final int CODE_START = 0x0100;
+    private static final int RANDOM_BLOCKS = 2000;
+
+    // set -Dinvaders.roms=... when not running from the project directory
+    private static final Path ROM_DIRECTORY = Paths.get(System.getProperty("invaders.roms", "assets/invaders"));
+    private static final String[] ROM_FILES = { "invaders.h", "invaders.g", "invaders.f", "invaders.e" };
+
+    private final JitCompiler compiler = new JitCompiler();
+
+    private static final class Machine {
+        final MemoryBus memory;
+        final Processor processor;
+        final StringBuilder output = new StringBuilder();
+
+        Machine (byte[] rom, int start, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            memory = new MemoryBus(rom, RAM_SIZE);
+            processor = new Processor(memory, random.nextBoolean() ? new LazyConditionFlags() : new ConditionFlags());
+            processor.setHardwareIOExecutor(new Processor.HardwareIOExecutor() {
+                @Override
+                public void hardwareIN (Processor processor, int port) {
+                    processor.writeRegisterValue(Registers.ACCUMULATOR, (byte) (port * 7 + 3));
+                }
+
+                @Override
+                public void hardwareOUT (Processor processor, int port) {
+                    output.append(port).append('=').append(processor.getRegisterValue(Registers.ACCUMULATOR)).append(' ');
+                }
+            });
+
+            for (int address = ROM_SIZE; address < ROM_SIZE + RAM_SIZE; address++) {
+                memory.writeMemory(address, random.nextInt(0x100));
+            }
+            for (int register = 0; register < 8; register++) {
+                processor.writeRegisterValue(register, (byte) random.nextInt(0x100));
+            }
+            processor.getConditionFlags().setFromByte(random.nextInt(0x100));
+            processor.setStackPointer(random.nextInt(0x10000));
+            processor.setProgramCounter(start);
+        }
+    }
+
+    @Test
+    void randomBlocksMatchTheInterpreter () {
+        SplittableRandom random = new SplittableRandom(8080);
+        int compiled = 0;
+        for (int i = 0; i < RANDOM_BLOCKS; i++) {
+            if (compare(randomBlock(random), CODE_START, random.nextLong(), 1 + random.nextInt(4))) {
+                compiled++;
+            }
+        }
+        assertEquals(RANDOM_BLOCKS, compiled);
+    }
+
+    @Test
+    void romBlocksMatchTheInterpreter () throws IOException {
+        byte[] rom = new byte[ROM_SIZE];
+        for (int i = 0; i < ROM_FILES.length; i++) {
+            byte[] file = Files.readAllBytes(ROM_DIRECTORY.resolve(ROM_FILES[i]));
+            System.arraycopy(file, 0, rom, i * file.length, file.length);
+        }
+        SplittableRandom random = new SplittableRandom(1978);
+        int compiled = 0;
+        for (int start = 0; start < ROM_SIZE; start++) {
+            if (compare(rom, start, random.nextLong(), 2)) {
+                compiled++;
+            }
+        }
+        // starts in the middle of an instruction or in data may run into undefined opcodes or out of the ROM
+        assertTrue(compiled > ROM_SIZE / 2, compiled + " blocks compiled");
+    }
+
+    /**
+     * A block of up to {@link #MAX_BLOCK_INSTRUCTIONS} defined opcodes with random operands at {@link #CODE_START},
+     * a quarter of them jump back to their start
+     */
+    private static byte[] randomBlock (SplittableRandom random) {
+        byte[] rom = new byte[ROM_SIZE];
+        int address = CODE_START;
+        int count = 1 + random.nextInt(MAX_BLOCK_INSTRUCTIONS);
+        for (int i = 0; i < count; i++) {
+            boolean last = i == count - 1;
+            int opcode;
+            int operand;
+            if (last && random.nextInt(4) == 0) {
+                opcode = random.nextBoolean() ? 0xC3 : 0xC2 | random.nextInt(8) << 3; // JMP, Jcc
+                operand = CODE_START;
+            } else {
+                do {
+                    opcode = random.nextInt(0x100);
+                } while (Instruction.fromOpcode(opcode) == null || (!last && endsBlock(opcode)));
+                operand = random.nextInt(0x10000);
+            }
+            rom[address] = (byte) opcode;
+            int length = Instruction.fromOpcode(opcode).getLength();
+            for (int b = 1; b < length; b++) {
+                rom[address + b] = (byte) (operand >> ((b - 1) * 8));
+            }
+            address += length;
+        }
+        return rom;
+    }
+
+    // what ends a block in BlockCache: branches, I/O, the interrupt state and undefined opcodes
+    private static boolean endsBlock (int opcode) {
+        switch (opcode) {
+            case 0xC3: case 0xCD: case 0xC9: case 0xE9: // JMP, CALL, RET, PCHL
+            case 0x76: case 0xDB: case 0xD3: case 0xFB: case 0xF3: // HLT, IN, OUT, EI, DI
+                return true;
+            default:
+                int low = opcode & 0xC7;
+                return low == 0xC2 || low == 0xC4 || low == 0xC0 || low == 0xC7 || Instruction.fromOpcode(opcode) == null;
+        }
+    }
+
+    /**
+     * Runs the block at start compiled and interpreted from the same random state
+     * @param passes budget in passes of the block, a block that jumps back to its start may go round that often
+     * @return false if the block couldn't be compiled or runs out of the ROM
+     */
+    private boolean compare (byte[] rom, int start, long seed, int passes) {
+        Machine interpreted = new Machine(rom, start, seed);
+        Machine compiled = new Machine(rom, start, seed);
+
+        List<Integer> opcodes = new ArrayList<>();
+        List<Integer> operands = new ArrayList<>();
+        int address = start;
+        while (opcodes.size() < MAX_BLOCK_INSTRUCTIONS) {
+            int opcode = rom[address] & 0xFF;
+            opcodes.add(opcode);
+            operands.add(Instruction.readOperand(compiled.memory, address, opcode));
+            address += Instruction.LENGTHS[opcode];
+            if (endsBlock(opcode) || address >= ROM_SIZE) {
+                break;
+            }
+        }
+        if (address > ROM_SIZE) {
+            return false;
+        }
+        int[] opcodeArray = opcodes.stream().mapToInt(Integer::intValue).toArray();
+        CompiledBlock block = compiler.compile(start, opcodeArray,
+            operands.stream().mapToInt(Integer::intValue).toArray());
+        if (block == null) {
+            return false;
+        }
+
+        int maxCycles = block.getMaxCycles();
+        int budget = maxCycles * passes;
+        int compiledCycles = block.execute(compiled.processor, budget);
+        int interpretedCycles = interpret(interpreted.processor, start, opcodeArray, maxCycles, budget);
+
+        StringBuilder where = new StringBuilder("block at 0x").append(Integer.toHexString(start)).append(',');
+        for (int opcode : opcodeArray) {
+            where.append(' ').append(Instruction.fromOpcode(opcode));
+        }
+        where.append(", seed ").append(seed).append(": ");
+
+        Processor expected = interpreted.processor;
+        Processor actual = compiled.processor;
+        assertEquals(interpretedCycles, compiledCycles, where + "cycles");
+        for (int register = 0; register < 8; register++) {
+            if (register != 6) {
+                assertEquals(expected.getRegisterValue(register), actual.getRegisterValue(register),
+                    where + "register " + register);
+            }
+        }
+        assertEquals(expected.getConditionFlags().getBits(), actual.getConditionFlags().getBits(), where + "flags");
+        assertEquals(expected.getStackPointer(), actual.getStackPointer(), where + "stack pointer");
+        assertEquals(expected.getProgramCounter(), actual.getProgramCounter(), where + "program counter");
+        assertEquals(expected.isInterruptsEnabled(), actual.isInterruptsEnabled(), where + "interrupts");
+        assertEquals(expected.isHalted(), actual.isHalted(), where + "halted");
+        assertEquals(interpreted.output.toString(), compiled.output.toString(), where + "ports written");
+        for (int ram = ROM_SIZE; ram < ROM_SIZE + RAM_SIZE; ram++) {
+            assertEquals(interpreted.memory.readMemory(ram), compiled.memory.readMemory(ram),
+                where + "RAM at 0x" + Integer.toHexString(ram));
+        }
+        return true;
+    }
+
+    /**
+     * Steps through the block, and through it again for as long as it jumped back to its start and another full
+     * pass fits in the budget, which is what the compiled block does
+     */
+    private static int interpret (Processor processor, int start, int[] opcodes, int maxCycles, int budget) {
+        int last = opcodes[opcodes.length - 1];
+        boolean loops = last == 0xC3 || (last & 0xC7) == 0xC2;
+        int cycles = 0;
+        do {
+            for (int i = 0; i < opcodes.length; i++) {
+                cycles += processor.step();
+            }
+        } while (loops && processor.getProgramCounter() == start && budget - cycles >= maxCycles);
+        return cycles;
+    }
+}
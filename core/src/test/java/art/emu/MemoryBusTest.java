@@ -0,0 +1,105 @@
+package art.emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Forked buses share their RAM until they write it, after that a write is only seen by the bus that made it
+ */
+class MemoryBusTest {
+    private static final int ROM_SIZE = 0x2000, RAM_SIZE = 0x2000;
+
+    private final SplittableRandom random = new SplittableRandom(6502);
+    private final MemoryBus memory = new MemoryBus(ROM_SIZE, RAM_SIZE);
+
+    MemoryBusTest () {
+        byte[] rom = new byte[ROM_SIZE];
+        for (int i = 0; i < ROM_SIZE; i++) {
+            rom[i] = (byte) random.nextInt(0x100);
+        }
+        memory.loadRom(0, rom);
+        for (int address = ROM_SIZE; address < ROM_SIZE + RAM_SIZE; address++) {
+            memory.writeMemory(address, random.nextInt(0x100));
+        }
+    }
+
+    private static byte[] ram (MemoryBus bus) {
+        byte[] ram = new byte[bus.getRamSize()];
+        bus.writeRam(ByteBuffer.wrap(ram));
+        return ram;
+    }
+
+    @Test
+    void writesStayOnTheSideThatWrote () {
+        MemoryBus fork = memory.fork();
+        assertArrayEquals(ram(memory), ram(fork));
+
+        byte[] expectedParent = ram(memory);
+        byte[] expectedFork = ram(fork);
+        for (int i = 0; i < 5000; i++) {
+            // the first write to a page copies it, later ones go to the copy
+            boolean parent = random.nextBoolean();
+            int address = ROM_SIZE + (random.nextInt(4) == 0 ? random.nextInt(16) : random.nextInt(RAM_SIZE));
+            int value = random.nextInt(0x100);
+            (parent ? memory : fork).writeMemory(address, value);
+            (parent ? expectedParent : expectedFork)[address - ROM_SIZE] = (byte) value;
+
+            assertEquals(expectedParent[address - ROM_SIZE] & 0xFF, memory.readMemory(address), "parent " + address);
+            assertEquals(expectedFork[address - ROM_SIZE] & 0xFF, fork.readMemory(address), "fork " + address);
+        }
+        assertArrayEquals(expectedParent, ram(memory));
+        assertArrayEquals(expectedFork, ram(fork));
+        // taking the whole array copies the pages still shared, the other bus keeps reading its own
+        assertArrayEquals(expectedFork, Arrays.copyOf(fork.getMemoryBytes(), RAM_SIZE));
+        fork.getMemoryBytes()[0] ^= 0xFF;
+        assertEquals(expectedParent[0] & 0xFF, memory.readMemory(ROM_SIZE));
+    }
+
+    @Test
+    void forksOfForksStayApart () {
+        MemoryBus[] buses = { memory, null, null, null };
+        byte[][] expected = new byte[buses.length][];
+        expected[0] = ram(memory);
+        buses[1] = memory.fork();
+        expected[1] = expected[0].clone();
+        buses[2] = buses[1].fork();
+        expected[2] = expected[1].clone();
+        for (int i = 0; i < 3000; i++) {
+            if (i == 1000) {
+                // a bus that already owns pages forks again
+                buses[3] = buses[0].fork();
+                expected[3] = expected[0].clone();
+            }
+            int bus = random.nextInt(buses[3] == null ? 3 : 4);
+            int address = ROM_SIZE + random.nextInt(RAM_SIZE);
+            int value = random.nextInt(0x100);
+            buses[bus].writeMemory(address, value);
+            expected[bus][address - ROM_SIZE] = (byte) value;
+        }
+        for (int bus = 0; bus < buses.length; bus++) {
+            assertArrayEquals(expected[bus], ram(buses[bus]), "bus " + bus);
+        }
+    }
+
+    @Test
+    void forkSharesTheRom () {
+        MemoryBus fork = memory.fork();
+        for (int address = 0; address < ROM_SIZE; address++) {
+            assertEquals(memory.readMemory(address), fork.readMemory(address));
+        }
+        int before = fork.readMemory(0x1234);
+        fork.writeMemory(0x1234, before ^ 0xFF);
+        memory.writeMemory(0x1234, before ^ 0xFF);
+        assertEquals(before, fork.readMemory(0x1234));
+        assertEquals(before, memory.readMemory(0x1234));
+        assertThrows(IllegalStateException.class, () -> memory.loadRom(0, new byte[1]));
+        assertThrows(IllegalStateException.class, () -> fork.loadRom(0, new byte[1]));
+    }
+}
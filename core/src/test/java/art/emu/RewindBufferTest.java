@@ -0,0 +1,99 @@
+package art.emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * States that change by a few random bytes from frame to frame, the way a running game does, pushed and rewound:
+ * every frame popped has to be the one pushed, also once the buffer has dropped its oldest frames
+ */
+class RewindBufferTest {
+    private static final int STATE_SIZE = 4000;
+    private static final int KEYFRAME_INTERVAL = 30;
+
+    private final SplittableRandom random = new SplittableRandom(2600);
+    private final byte[] state = new byte[STATE_SIZE];
+    // every state pushed and not popped again, oldest first
+    private final List<byte[]> pushed = new ArrayList<>();
+
+    RewindBufferTest () {
+        for (int i = 0; i < STATE_SIZE; i++) {
+            state[i] = (byte) random.nextInt(0x100);
+        }
+    }
+
+    // changes a few runs of bytes, now and then a long one
+    private void nextFrame (RewindBuffer buffer) {
+        int runs = random.nextInt(8);
+        for (int run = 0; run < runs; run++) {
+            int start = random.nextInt(STATE_SIZE);
+            int length = random.nextInt(10) == 0 ? random.nextInt(1000) : 1 + random.nextInt(4);
+            for (int i = start; i < Math.min(start + length, STATE_SIZE); i++) {
+                state[i] = (byte) random.nextInt(0x100);
+            }
+        }
+        buffer.push(state);
+        pushed.add(state.clone());
+    }
+
+    private void rewind (RewindBuffer buffer, int frames) {
+        byte[] into = new byte[STATE_SIZE];
+        for (int i = 0; i < frames; i++) {
+            assertTrue(buffer.pop(into), "frame " + (pushed.size() - 1) + " left");
+            assertArrayEquals(pushed.remove(pushed.size() - 1), into, "frame " + pushed.size());
+        }
+        assertEquals(pushed.size(), buffer.size());
+        // play goes on from the frame rewound to
+        System.arraycopy(pushed.isEmpty() ? into : pushed.get(pushed.size() - 1), 0, state, 0, STATE_SIZE);
+    }
+
+    @Test
+    void rewindsToEveryFramePushed () {
+        RewindBuffer buffer = new RewindBuffer(STATE_SIZE, KEYFRAME_INTERVAL, Long.MAX_VALUE);
+        for (int i = 0; i < 500; i++) {
+            nextFrame(buffer);
+        }
+        rewind(buffer, 500);
+        assertFalse(buffer.pop(new byte[STATE_SIZE]));
+    }
+
+    @Test
+    void rewindsAndPlaysOnAgain () {
+        RewindBuffer buffer = new RewindBuffer(STATE_SIZE, KEYFRAME_INTERVAL, Long.MAX_VALUE);
+        for (int round = 0; round < 50; round++) {
+            int frames = 1 + random.nextInt(100);
+            for (int i = 0; i < frames; i++) {
+                nextFrame(buffer);
+            }
+            // across keyframes as well as within the newest one's deltas
+            rewind(buffer, random.nextInt(buffer.size() + 1));
+        }
+        rewind(buffer, buffer.size());
+    }
+
+    @Test
+    void keepsTheNewestFramesOnceFull () {
+        // room for a few keyframes and their deltas, the frames since the newest keyframe always stay
+        long maxBytes = 256 * 1024;
+        RewindBuffer buffer = new RewindBuffer(STATE_SIZE, KEYFRAME_INTERVAL, maxBytes);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) {
+                nextFrame(buffer);
+                assertTrue(buffer.getBytesUsed() <= maxBytes, buffer.toString());
+            }
+            assertTrue(buffer.size() < pushed.size(), "nothing dropped: " + buffer);
+            // what was dropped is the oldest, so the buffer holds the end of the states pushed
+            pushed.subList(0, pushed.size() - buffer.size()).clear();
+            rewind(buffer, random.nextInt(buffer.size() + 1));
+        }
+        rewind(buffer, buffer.size());
+    }
+}
@@ -0,0 +1,65 @@
+package art.emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cancelled events don't fire and hand their entries back for the next schedule
+ */
+class SchedulerTest {
+    private final Scheduler scheduler = new Scheduler();
+    private final List<String> fired = new ArrayList<>();
+
+    private Scheduler.Event event (String name) {
+        return deadline -> fired.add(name + "@" + deadline);
+    }
+
+    @Test
+    void cancelThenRescheduleFiresOnlyTheNewDeadline () {
+        Scheduler.Event timer = event("timer");
+        Scheduler.Event other = event("other");
+        scheduler.schedule(100, timer);
+        scheduler.schedule(150, other);
+        scheduler.schedule(200, timer);
+
+        scheduler.cancel(timer);
+        assertEquals(Long.MAX_VALUE, scheduler.deadlineOf(timer));
+        assertEquals(150, scheduler.nextDeadline());
+        scheduler.schedule(120, timer);
+        assertEquals(120, scheduler.deadlineOf(timer));
+
+        scheduler.advance(300);
+        scheduler.fireDue();
+        assertEquals(List.of("timer@120", "other@150"), fired);
+        assertEquals(Long.MAX_VALUE, scheduler.nextDeadline());
+    }
+
+    @Test
+    void cancelledEntriesAreReused () {
+        Scheduler.Event timer = event("timer");
+        Scheduler.Event other = event("other");
+        for (int i = 0; i < 10; i++) {
+            scheduler.schedule(100 + i, timer);
+        }
+        scheduler.schedule(50, other);
+        scheduler.cancel(timer);
+        assertEquals(10, scheduler.freeEntries());
+
+        for (int round = 0; round < 1000; round++) {
+            scheduler.schedule(scheduler.getCycle() + 10, timer);
+            scheduler.cancel(timer);
+        }
+        // the same entry went round every time, nothing else was allocated
+        assertEquals(10, scheduler.freeEntries());
+        assertEquals(50, scheduler.nextDeadline());
+
+        scheduler.advance(50);
+        scheduler.fireDue();
+        assertEquals(List.of("other@50"), fired);
+        assertEquals(11, scheduler.freeEntries());
+    }
+}
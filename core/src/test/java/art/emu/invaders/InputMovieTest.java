@@ -0,0 +1,80 @@
+package art.emu.invaders;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Movies written and read back: every frame's inputs and hashes survive, and so do the bytes
+ */
+class InputMovieTest {
+    private final SplittableRandom random = new SplittableRandom(1978);
+
+    // inputs held for a random while, sometimes longer than a one byte frame count reaches
+    private InputMovie record (boolean withHashes, int frames) {
+        InputMovie movie = new InputMovie(withHashes);
+        int inputs = 0;
+        int held = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            if (held-- == 0) {
+                inputs = random.nextInt(0x10000);
+                held = random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(20);
+            }
+            movie.record(inputs, random.nextInt());
+        }
+        return movie;
+    }
+
+    private static void assertSameMovie (InputMovie expected, InputMovie actual) {
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+        assertEquals(expected.hasVramHashes(), actual.hasVramHashes());
+        for (int frame = 0; frame < expected.getFrameCount(); frame++) {
+            assertEquals(expected.getInputs(frame), actual.getInputs(frame), "inputs of frame " + frame);
+            if (expected.hasVramHashes()) {
+                assertEquals(expected.getVramHash(frame), actual.getVramHash(frame), "hash of frame " + frame);
+            }
+        }
+    }
+
+    @Test
+    void survivesWriteAndRead () {
+        for (boolean withHashes : new boolean[] { false, true }) {
+            for (int frames : new int[] { 0, 1, 2, 500, 100_000 }) {
+                InputMovie movie = record(withHashes, frames);
+                byte[] bytes = movie.toBytes();
+                assertEquals(movie.getByteSize(), bytes.length);
+
+                InputMovie read = InputMovie.read(bytes);
+                assertSameMovie(movie, read);
+                assertArrayEquals(bytes, read.toBytes(), frames + " frames, hashes " + withHashes);
+            }
+        }
+    }
+
+    @Test
+    void survivesTruncateAndRecordingOn () {
+        InputMovie movie = record(true, 3000);
+        // what a rewind does: drop the frames gone back over and record different ones
+        movie.truncate(1234);
+        for (int frame = 1234; frame < 2000; frame++) {
+            movie.record(frame, frame * 31);
+        }
+        InputMovie read = InputMovie.read(ByteBuffer.wrap(movie.toBytes()));
+        assertSameMovie(movie, read);
+        assertEquals(2000, read.getFrameCount());
+        assertEquals(1500, read.getInputs(1500));
+        assertEquals(1500 * 31, read.getVramHash(1500));
+    }
+
+    @Test
+    void rejectsOtherData () {
+        byte[] bytes = record(false, 10).toBytes();
+        bytes[7]++;
+        assertThrows(IllegalArgumentException.class, () -> InputMovie.read(bytes));
+    }
+}
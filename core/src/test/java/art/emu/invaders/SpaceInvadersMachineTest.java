@@ -0,0 +1,121 @@
+package art.emu.invaders;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Saved states of a machine in the middle of a game: loading one gives back the exact machine that saved it. A fork
+ * runs on from the same state without the two seeing each other's writes
+ */
+class SpaceInvadersMachineTest {
+    // set -Dinvaders.roms=... when not running from the project directory
+    private static final Path ROM_DIRECTORY = Paths.get(System.getProperty("invaders.roms", "assets/invaders"));
+
+    private final RomImage rom;
+
+    SpaceInvadersMachineTest () throws IOException {
+        byte[][] files = new byte[SpaceInvadersMachine.ROM_FILES.length][];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = Files.readAllBytes(ROM_DIRECTORY.resolve(SpaceInvadersMachine.ROM_FILES[i]));
+        }
+        rom = RomImage.of(files);
+    }
+
+    /**
+     * Inserts a coin, starts a one player game and then moves and shoots at random
+     */
+    private static int inputs (int frame, SplittableRandom random) {
+        if (frame >= 10 && frame < 15) {
+            return SpaceInvadersMachine.Input.CREDIT.mask();
+        }
+        if (frame >= 60 && frame < 65) {
+            return SpaceInvadersMachine.Input.START_1P.mask();
+        }
+        if (frame < 120) {
+            return 0;
+        }
+        int inputs = 0;
+        if (random.nextBoolean()) {
+            inputs |= random.nextBoolean() ? SpaceInvadersMachine.Input.LEFT_1P.mask()
+                : SpaceInvadersMachine.Input.RIGHT_1P.mask();
+        }
+        if (random.nextInt(4) == 0) {
+            inputs |= SpaceInvadersMachine.Input.SHOT_1P.mask();
+        }
+        return inputs;
+    }
+
+    private static void play (SpaceInvadersMachine machine, int fromFrame, int frames, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int frame = fromFrame; frame < fromFrame + frames; frame++) {
+            machine.setInputs(inputs(frame, random));
+            machine.runFrame();
+        }
+    }
+
+    @Test
+    void saveLoadSaveGivesTheSameBytes () {
+        SpaceInvadersMachine machine = new SpaceInvadersMachine(rom, null);
+        for (int frame = 0; frame < 600; frame += 50) {
+            play(machine, frame, 50, frame);
+            byte[] saved = machine.saveState();
+            assertEquals(SpaceInvadersMachine.STATE_SIZE, saved.length);
+
+            SpaceInvadersMachine loaded = new SpaceInvadersMachine(rom, null);
+            loaded.loadState(saved);
+            assertArrayEquals(saved, loaded.saveState(), "frame " + frame);
+            machine.loadState(saved);
+            assertArrayEquals(saved, machine.saveState(), "frame " + frame + ", loaded into itself");
+        }
+    }
+
+    @Test
+    void loadedStateRunsOnTheSameGame () {
+        SpaceInvadersMachine machine = new SpaceInvadersMachine(rom, null);
+        play(machine, 0, 300, 1);
+        byte[] saved = machine.saveState();
+        play(machine, 300, 200, 2);
+
+        SpaceInvadersMachine loaded = new SpaceInvadersMachine(rom, null);
+        loaded.loadState(saved);
+        play(loaded, 300, 200, 2);
+        assertArrayEquals(machine.saveState(), loaded.saveState());
+        assertEquals(machine.hashVram(), loaded.hashVram());
+
+        // and the machine that saved the state goes back to it
+        machine.loadState(saved);
+        play(machine, 300, 200, 2);
+        assertArrayEquals(loaded.saveState(), machine.saveState());
+    }
+
+    @Test
+    void forkAndParentRunApart () {
+        SpaceInvadersMachine machine = new SpaceInvadersMachine(rom, null);
+        play(machine, 0, 300, 3);
+        byte[] saved = machine.saveState();
+        SpaceInvadersMachine fork = machine.fork();
+        assertArrayEquals(saved, fork.saveState());
+
+        // different inputs from here on, each has to end up where a machine loaded from the state does alone
+        play(machine, 300, 200, 4);
+        play(fork, 300, 200, 5);
+        assertFalse(Arrays.equals(machine.saveState(), fork.saveState()), "the inputs made no difference");
+        SpaceInvadersMachine alone = new SpaceInvadersMachine(rom, null);
+        alone.loadState(saved);
+        play(alone, 300, 200, 4);
+        assertArrayEquals(alone.saveState(), machine.saveState());
+        alone.loadState(saved);
+        play(alone, 300, 200, 5);
+        assertArrayEquals(alone.saveState(), fork.saveState());
+    }
+}
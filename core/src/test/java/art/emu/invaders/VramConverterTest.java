@@ -0,0 +1,77 @@
+package art.emu.invaders;
+
+import art.emu.MemoryBus;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bands of random video RAM converted from memory and from a copy, against the pixel every bit of a line is in the
+ * upright picture
+ */
+class VramConverterTest {
+    private static final int GREEN = 0x00FF00FF, WHITE = 0xFFFFFFFF, BLACK = 0x000000FF;
+
+    private final SplittableRandom random = new SplittableRandom(1978);
+    private final byte[] vram = new byte[SpaceInvadersMachine.V_RAM_SIZE];
+    private final MemoryBus memory = new MemoryBus(SpaceInvadersMachine.ROM_SIZE, SpaceInvadersMachine.RAM_SIZE);
+    // RGBA as an int in big endian order
+    private final VramConverter converter = new VramConverter(ByteOrder.BIG_ENDIAN);
+
+    VramConverterTest () {
+        for (int i = 0; i < vram.length; i++) {
+            vram[i] = (byte) random.nextInt(0x100);
+            memory.writeMemory(SpaceInvadersMachine.V_RAM_START + i, vram[i]);
+        }
+    }
+
+    // line first + x, bit 255 - y of it, green in the lowest 64
+    private int expected (int first, int x, int y) {
+        int bit = VramConverter.SCREEN_HEIGHT - 1 - y;
+        int value = vram[(first + x) * VramConverter.BYTES_PER_LINE + (bit >> 3)];
+        if ((value >> (bit & 7) & 1) == 0) {
+            return BLACK;
+        }
+        return bit < 64 ? GREEN : WHITE;
+    }
+
+    private void assertBand (int first, int last, IntBuffer pixels, int start) {
+        int width = last - first + 1;
+        assertEquals(start + width * VramConverter.SCREEN_HEIGHT, pixels.position(), "position after the band");
+        for (int y = 0; y < VramConverter.SCREEN_HEIGHT; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(expected(first, x, y), pixels.get(start + y * width + x),
+                    "band " + first + " to " + last + ", x " + x + ", y " + y);
+            }
+        }
+    }
+
+    @Test
+    void convertsTheWholeScreen () {
+        IntBuffer pixels = IntBuffer.allocate(VramConverter.SCREEN_WIDTH * VramConverter.SCREEN_HEIGHT);
+        converter.convert(memory, pixels);
+        assertBand(0, VramConverter.HEIGHT - 1, pixels, 0);
+    }
+
+    @Test
+    void convertsBandsFromTheBufferPosition () {
+        IntBuffer pixels = IntBuffer.allocate(VramConverter.SCREEN_WIDTH * VramConverter.SCREEN_HEIGHT + 8);
+        for (int i = 0; i < 200; i++) {
+            int first = random.nextInt(VramConverter.HEIGHT);
+            int last = first + random.nextInt(Math.min(VramConverter.HEIGHT - first, i % 2 == 0 ? 20 : 224));
+            int start = random.nextInt(8);
+
+            pixels.clear().position(start);
+            converter.convert(memory, first, last, pixels);
+            assertBand(first, last, pixels, start);
+
+            pixels.clear().position(start);
+            converter.convert(vram, first, last, pixels);
+            assertBand(first, last, pixels, start);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package art.emu.headless;
+
+import art.emu.BlockCompiler;
+import art.emu.invaders.InputMovie;
+import art.emu.invaders.RomImage;
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.jit.JitCompiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs many independent Space Invaders machines at once on a work stealing pool, e.g. to evaluate agents, replay a
+ * pile of movies or soak test. Every machine has its own CPU, memory, ports and block cache and runs its own input
+ * script or movie for its own number of frames, so machines never share anything they write and run on all cores
+ * without locks. The ROM files are read and checked once, all machines map the same {@link RomImage} and only
+ * allocate their own RAM.
+ * <p>
+ * Usage: BatchRunner [--roms dir] [--machines n] [--threads n] [--frames n] [--input script]... [--movie file]...
+ * [--jit] [--scaling]
+ * <ul>
+ *     <li>--roms: directory holding invaders.h to invaders.e, default assets/invaders</li>
+ *     <li>--machines: machines to run, default 4 per thread</li>
+ *     <li>--threads: size of the pool, default one per core</li>
+ *     <li>--frames: frames per machine, default 3600, movies run to their end</li>
+ *     <li>--input: {@link InputScript}, machines take the scripts and movies given in turn</li>
+ *     <li>--movie: {@link InputMovie} to replay, a machine whose video RAM differs from the recording fails</li>
+ *     <li>--jit: compile hot blocks, every machine compiles its own so it only pays off for long runs</li>
+ *     <li>--scaling: run the batch with 1, 2, 4... threads up to --threads to see how it scales</li>
+ * </ul>
+ */
+public class BatchRunner {
+    /**
+     * One machine to run: where its input comes from and for how long
+     */
+    public static final class Job {
+        final String name;
+        final long frames;
+        final InputScript script;
+        final InputMovie movie;
+
+        private Job (String name, long frames, InputScript script, InputMovie movie) {
+            this.name = name;
+            this.frames = frames;
+            this.script = script;
+            this.movie = movie;
+        }
+
+        /**
+         * @param script played from its first frame on, every job plays its own copy
+         */
+        public static Job script (String name, long frames, InputScript script) {
+            return new Job(name, frames, script, null);
+        }
+
+        /**
+         * Replays the whole movie and checks the video RAM hashes if it has them
+         */
+        public static Job movie (String name, InputMovie movie) {
+            return new Job(name, movie.getFrameCount(), null, movie);
+        }
+    }
+
+    public static final class Result {
+        public final String name;
+        public final long frames;
+        public final long cycles;
+        public final long nanos;
+        /**
+         * {@link SpaceInvadersMachine#hashVram()} after the last frame
+         */
+        public final int vramHash;
+        /**
+         * Frame a movie replay first differed from the recording at, -1 if it never did
+         */
+        public final long divergedAt;
+
+        Result (String name, long frames, long cycles, long nanos, int vramHash, long divergedAt) {
+            this.name = name;
+            this.frames = frames;
+            this.cycles = cycles;
+            this.nanos = nanos;
+            this.vramHash = vramHash;
+            this.divergedAt = divergedAt;
+        }
+
+        @Override
+        public String toString () {
+            return String.format("%s: %d frames, %.1f fps, vram %08x%s", name, frames, frames * 1e9 / nanos, vramHash,
+                divergedAt >= 0 ? ", diverged at frame " + divergedAt : "");
+        }
+    }
+
+    private final RomImage rom;
+    private final Supplier<BlockCompiler> compilers;
+
+    /**
+     * @param rom shared by every machine, see {@link RomFiles#load(Path)}
+     * @param compilers makes the compiler of every machine, null to only interpret
+     */
+    public BatchRunner (RomImage rom, Supplier<BlockCompiler> compilers) {
+        this.rom = rom;
+        this.compilers = compilers;
+    }
+
+    /**
+     * Runs every job on a pool of the given size and waits for all of them
+     * @return results in the order of the jobs
+     */
+    public List<Result> run (List<Job> jobs, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Callable<Result>> tasks = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                tasks.add(() -> run(job));
+            }
+            List<Result> results = new ArrayList<>(jobs.size());
+            for (Future<Result> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A machine of the batch failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result run (Job job) {
+        long start = System.nanoTime();
+        SpaceInvadersMachine machine = new SpaceInvadersMachine(rom, compilers == null ? null : compilers.get());
+        InputScript script = job.script != null ? job.script.copy() : null;
+        InputMovie movie = job.movie;
+        boolean checkHashes = movie != null && movie.hasVramHashes();
+
+        long cycles = 0;
+        long frame = 0;
+        long divergedAt = -1;
+        for (; frame < job.frames; frame++) {
+            if (movie != null) {
+                machine.setInputs(movie.getInputs((int) frame));
+            } else if (script != null) {
+                script.apply(frame, machine);
+            }
+            cycles += machine.runFrame();
+            if (checkHashes && machine.hashVram() != movie.getVramHash((int) frame)) {
+                divergedAt = frame;
+                frame++;
+                break;
+            }
+        }
+        return new Result(job.name, frame, cycles, System.nanoTime() - start, machine.hashVram(), divergedAt);
+    }
+
+    public static void main (String[] args) throws IOException {
+        Path romDirectory = Paths.get("assets/invaders");
+        int threads = Runtime.getRuntime().availableProcessors();
+        int machines = -1;
+        long frames = 3600;
+        List<Path> scripts = new ArrayList<>();
+        List<Path> movies = new ArrayList<>();
+        boolean jit = false;
+        boolean scaling = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--roms":
+                    romDirectory = Paths.get(value(args, ++i));
+                    break;
+                case "--machines":
+                    machines = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--frames":
+                    frames = Long.parseLong(value(args, ++i));
+                    break;
+                case "--input":
+                    scripts.add(Paths.get(value(args, ++i)));
+                    break;
+                case "--movie":
+                    movies.add(Paths.get(value(args, ++i)));
+                    break;
+                case "--jit":
+                    jit = true;
+                    break;
+                case "--scaling":
+                    scaling = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.err.println("Usage: BatchRunner [--roms dir] [--machines n] [--threads n] [--frames n]"
+                        + " [--input script]... [--movie file]... [--jit] [--scaling]");
+                    System.exit(2);
+            }
+        }
+        if (machines < 0) {
+            machines = threads * 4;
+        }
+
+        // every input is read once, the jobs share it
+        List<Job> inputs = new ArrayList<>();
+        for (Path script : scripts) {
+            inputs.add(Job.script(script.getFileName().toString(), frames, InputScript.load(script)));
+        }
+        for (Path movie : movies) {
+            inputs.add(Job.movie(movie.getFileName().toString(), InputMovie.read(Files.readAllBytes(movie))));
+        }
+        if (inputs.isEmpty()) {
+            inputs.add(Job.script("attract", frames, InputScript.empty()));
+        }
+        List<Job> jobs = new ArrayList<>(machines);
+        for (int i = 0; i < machines; i++) {
+            Job input = inputs.get(i % inputs.size());
+            jobs.add(new Job("#" + i + " " + input.name, input.frames, input.script, input.movie));
+        }
+
+        BatchRunner runner = new BatchRunner(RomFiles.load(romDirectory), jit ? JitCompiler::new : null);
+        List<Integer> poolSizes = new ArrayList<>();
+        for (int poolSize = 1; scaling && poolSize < threads; poolSize *= 2) {
+            poolSizes.add(poolSize);
+        }
+        poolSizes.add(threads);
+
+        int failed = 0;
+        for (int poolSize : poolSizes) {
+            long start = System.nanoTime();
+            List<Result> results = runner.run(jobs, poolSize);
+            long nanos = System.nanoTime() - start;
+
+            long totalFrames = 0;
+            long totalCycles = 0;
+            failed = 0;
+            for (Result result : results) {
+                totalFrames += result.frames;
+                totalCycles += result.cycles;
+                if (result.divergedAt >= 0) {
+                    System.out.println(result);
+                    failed++;
+                }
+            }
+            System.out.printf("%d machines on %d threads: %d frames in %.1f ms, %.1f fps, %.1f emulated MHz%s%n",
+                machines, poolSize, totalFrames, nanos / 1e6, totalFrames * 1e9 / nanos, totalCycles * 1e3 / nanos,
+                failed > 0 ? ", " + failed + " diverged" : "");
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String value (String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+}
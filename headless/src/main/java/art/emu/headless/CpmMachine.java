@@ -0,0 +1,169 @@
+package art.emu.headless;
+
+import art.emu.BlockCache;
+import art.emu.BlockCompiler;
+import art.emu.ConditionFlags;
+import art.emu.MemoryBus;
+import art.emu.Processor;
+import art.emu.Registers;
+
+/**
+ * Just enough CP/M to run the usual 8080 test programs: the .COM file at 0x100 in 64K of RAM and a BDOS that knows
+ * console output. CALL 5 jumps to the BDOS entry, which traps to the host with an OUT and returns, warm boot
+ * (JMP 0) traps the same way and stops the program
+ */
+public class CpmMachine {
+    private static final int TPA = 0x100;
+    private static final int BDOS_ENTRY = 0xFE00;
+
+    private static final int WARM_BOOT_PORT = 0;
+    private static final int BDOS_PORT = 1;
+
+    // BDOS functions, number in C
+    private static final int CONSOLE_OUTPUT = 2;
+    private static final int PRINT_STRING = 9;
+
+    private static final int CHUNK_CYCLES = 1 << 20;
+
+    private final Processor processor;
+    private final StringBuilder output = new StringBuilder();
+    private final boolean echo;
+    private boolean stopped;
+    private BlockCache blockCache;
+
+    private long cycles;
+    private long instructions;
+
+    /**
+     * @param echo also print the console output as it comes
+     */
+    public CpmMachine (byte[] program, boolean echo) {
+        if (program.length > BDOS_ENTRY - TPA) {
+            throw new IllegalArgumentException("Program of " + program.length + " bytes does not fit below the BDOS");
+        }
+        this.echo = echo;
+        processor = new Processor(new MemoryBus(MemoryBus.MAX_MEMORY), new ConditionFlags());
+        processor.setHardwareIOExecutor(new Processor.HardwareIOExecutor() {
+            @Override
+            public void hardwareIN (Processor processor, int port) {
+                processor.writeRegisterValue(Registers.ACCUMULATOR, (byte) 0);
+            }
+
+            @Override
+            public void hardwareOUT (Processor processor, int port) {
+                if (port == BDOS_PORT) {
+                    bdos();
+                } else if (port == WARM_BOOT_PORT) {
+                    stopped = true;
+                    if (blockCache != null) {
+                        blockCache.stop();
+                    }
+                }
+            }
+        });
+
+        byte[] memory = processor.getMemory().getMemoryBytes();
+        System.arraycopy(program, 0, memory, TPA, program.length);
+        // 0x0000: OUT 0, HLT, warm boot
+        put(memory, 0x0000, 0xD3, WARM_BOOT_PORT, 0x76);
+        // 0x0005: JMP BDOS_ENTRY, programs take 0x0006 as the top of their memory
+        put(memory, 0x0005, 0xC3, BDOS_ENTRY & 0xFF, BDOS_ENTRY >> 8);
+        // BDOS_ENTRY: OUT 1, RET
+        put(memory, BDOS_ENTRY, 0xD3, BDOS_PORT, 0xC9);
+
+        processor.setProgramCounter(TPA);
+        processor.setStackPointer(BDOS_ENTRY);
+    }
+
+    private static void put (byte[] memory, int address, int... bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            memory[address + i] = (byte) bytes[i];
+        }
+    }
+
+    private void bdos () {
+        switch (processor.getRegisterValue(Registers.C)) {
+            case CONSOLE_OUTPUT:
+                print((char) processor.getRegisterValue(Registers.E));
+                break;
+            case PRINT_STRING:
+                MemoryBus memory = processor.getMemory();
+                int address = (processor.getRegisterValue(Registers.D) << 8) | processor.getRegisterValue(Registers.E);
+                for (int value; (value = memory.readMemory(address)) != '$'; address++) {
+                    print((char) value);
+                }
+                break;
+            default:
+                // nothing else is needed by the test programs, ignore it like a missing device
+        }
+    }
+
+    private void print (char c) {
+        output.append(c);
+        if (echo) {
+            System.out.print(c);
+            if (c == '\n') {
+                System.out.flush();
+            }
+        }
+    }
+
+    /**
+     * Interprets one instruction at a time until the program warm boots, the cycles and instructions counted up to
+     * the warm boot or the instruction that threw
+     * @param cycleLimit stop after about this many cycles, 0 for no limit
+     * @return true if the program ended by itself
+     */
+    public boolean run (long cycleLimit) {
+        long limit = cycleLimit == 0 ? Long.MAX_VALUE : cycleLimit;
+        long cycles = this.cycles;
+        long instructions = this.instructions;
+        try {
+            while (!stopped && cycles < limit) {
+                cycles += processor.step();
+                instructions++;
+            }
+        } finally {
+            this.cycles = cycles;
+            this.instructions = instructions;
+        }
+        return stopped;
+    }
+
+    /**
+     * Runs through a {@link BlockCache}, which the warm boot stops right after the OUT that traps it
+     * @param cycleLimit stop after about this many cycles, 0 for no limit
+     * @return true if the program ended by itself
+     */
+    public boolean run (BlockCompiler compiler, long cycleLimit) {
+        long limit = cycleLimit == 0 ? Long.MAX_VALUE : cycleLimit;
+        long startCycles = cycles;
+        long startInstructions = instructions;
+        blockCache = new BlockCache(processor.getMemory());
+        blockCache.setCompiler(compiler, BlockCache.DEFAULT_COMPILE_THRESHOLD);
+        try {
+            while (!stopped && cycles < limit) {
+                blockCache.execute(processor, CHUNK_CYCLES);
+                cycles = startCycles + blockCache.getCycles();
+            }
+        } finally {
+            // the cache counts the cycles of a chunk that threw too
+            cycles = startCycles + blockCache.getCycles();
+            instructions = startInstructions + blockCache.getInstructions();
+            blockCache = null;
+        }
+        return stopped;
+    }
+
+    public String getOutput () {
+        return output.toString();
+    }
+
+    public long getCycles () {
+        return cycles;
+    }
+
+    public long getInstructions () {
+        return instructions;
+    }
+}
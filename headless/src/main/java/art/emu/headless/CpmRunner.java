@@ -0,0 +1,118 @@
+package art.emu.headless;
+
+import art.emu.jit.JitCompiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Runs CP/M 8080 test programs (TST8080, CPUTEST, 8080PRE, 8080EXM and the like) on {@link CpmMachine} and reports
+ * pass or fail with the instructions and cycles run up to the warm boot or the failure, per second too. A program
+ * fails when its output mentions an error or a failure, when it stops on an undefined opcode or when it doesn't finish
+ * within the limit.
+ * Exits with 1 if any program failed, so the Gradle test task fails with it.
+ * <p>
+ * Usage: CpmRunner [--quiet] [--jit] [--limit n] file.COM|directory...
+ * <ul>
+ *     <li>--quiet: don't echo the console output</li>
+ *     <li>--jit: run through the block cache and compiler</li>
+ *     <li>--limit: cycles per program, 0 for no limit, default {@link #DEFAULT_LIMIT}</li>
+ * </ul>
+ */
+public class CpmRunner {
+    /**
+     * Cycles a program gets before it counts as hung, about twice what 8080EXM takes
+     */
+    public static final long DEFAULT_LIMIT = 50_000_000_000L;
+
+    public static void main (String[] args) throws IOException {
+        boolean echo = true;
+        boolean jit = false;
+        long limit = DEFAULT_LIMIT;
+        List<Path> programs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quiet":
+                    echo = false;
+                    break;
+                case "--jit":
+                    jit = true;
+                    break;
+                case "--limit":
+                    limit = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    collect(Paths.get(args[i]), programs);
+            }
+        }
+
+        if (programs.isEmpty()) {
+            System.out.println("No CP/M programs found in " + String.join(", ", args));
+            System.exit(1);
+        }
+
+        int failed = 0;
+        for (Path program : programs) {
+            if (!run(program, echo, jit, limit)) {
+                failed++;
+            }
+        }
+        System.out.println(programs.size() - failed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void collect (Path path, List<Path> programs) throws IOException {
+        if (!Files.isDirectory(path)) {
+            if (Files.exists(path)) {
+                programs.add(path);
+            }
+            return;
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            files.filter(file -> file.getFileName().toString().toUpperCase(Locale.ROOT).endsWith(".COM"))
+                .sorted()
+                .forEach(programs::add);
+        }
+    }
+
+    private static boolean run (Path program, boolean echo, boolean jit, long limit) throws IOException {
+        System.out.println("== " + program.getFileName());
+        CpmMachine machine = new CpmMachine(Files.readAllBytes(program), echo);
+
+        long start = System.nanoTime();
+        boolean finished;
+        String problem = null;
+        try {
+            finished = jit ? machine.run(new JitCompiler(), limit) : machine.run(limit);
+        } catch (IllegalStateException e) {
+            finished = false;
+            problem = e.getMessage();
+        }
+        long nanos = System.nanoTime() - start;
+        if (echo) {
+            System.out.println();
+        }
+
+        String output = machine.getOutput().toUpperCase(Locale.ROOT);
+        if (problem == null && !finished) {
+            problem = "did not finish within " + limit + " cycles";
+        } else if (problem == null && (output.contains("ERROR") || output.contains("FAIL"))) {
+            problem = "reported a failure";
+        }
+
+        System.out.printf("%s %s in %.1f s, %d instructions, %d cycles, %.1f MHz, %.1f million instructions/s%n",
+            problem == null ? "PASS" : "FAIL " + problem + ":", program.getFileName(), nanos / 1e9,
+            machine.getInstructions(), machine.getCycles(), machine.getCycles() * 1e3 / nanos,
+            machine.getInstructions() * 1e3 / nanos);
+        return problem == null;
+    }
+}
@@ -0,0 +1,221 @@
+package art.emu.headless;
+
+import art.emu.invaders.RomImage;
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.invaders.SpaceInvadersMachine.Input;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Brute force search over inputs from one point of a game, to show off {@link SpaceInvadersMachine#fork()}. A root
+ * machine plays up to the start frame, then every branch forks it and plays its own random inputs for the same
+ * number of frames on a work stealing pool. Branches share the ROM, the decoded blocks and every RAM page they don't
+ * write, so forking costs microseconds. The branches are compared by score, then by ships left, and the best one is
+ * played again on a fresh fork to check it scores the same.
+ * <p>
+ * Usage: ForkSearch [--roms dir] [--input script] [--start n] [--branches n] [--frames n] [--hold n] [--threads n]
+ * [--seed n]
+ * <ul>
+ *     <li>--roms: directory holding invaders.h to invaders.e, default assets/invaders</li>
+ *     <li>--input: {@link InputScript} the root plays up to the start frame, default drops a coin and starts a
+ *     one player game</li>
+ *     <li>--start: frame the branches fork at, default 400</li>
+ *     <li>--branches: input sequences to try, default 256</li>
+ *     <li>--frames: frames every branch plays, default 600</li>
+ *     <li>--hold: frames every random input is held for, default 8</li>
+ *     <li>--threads: size of the pool, default one per core</li>
+ *     <li>--seed: seed of the random inputs, branch n plays the sequence of seed + n</li>
+ * </ul>
+ */
+public class ForkSearch {
+    // what a branch picks from every few frames: nothing, a move, a shot or both
+    private static final int[] ACTIONS = {
+        0,
+        Input.LEFT_1P.mask(),
+        Input.RIGHT_1P.mask(),
+        Input.SHOT_1P.mask(),
+        Input.LEFT_1P.mask() | Input.SHOT_1P.mask(),
+        Input.RIGHT_1P.mask() | Input.SHOT_1P.mask(),
+    };
+
+    public static final class Branch {
+        public final int index;
+        public final int score;
+        public final int ships;
+
+        Branch (int index, int score, int ships) {
+            this.index = index;
+            this.score = score;
+            this.ships = ships;
+        }
+
+        boolean beats (Branch other) {
+            return score != other.score ? score > other.score : ships > other.ships;
+        }
+    }
+
+    private final int frames;
+    private final int hold;
+    private final long seed;
+
+    /**
+     * @param frames frames every branch plays
+     * @param hold frames every random input is held for
+     * @param seed branch n plays the inputs of seed + n
+     */
+    public ForkSearch (int frames, int hold, long seed) {
+        this.frames = frames;
+        this.hold = hold;
+        this.seed = seed;
+    }
+
+    /**
+     * Forks the root once per branch and plays all branches on a pool of the given size. The root itself doesn't
+     * run, it can be searched from again afterwards
+     * @return one result per branch, in branch order
+     */
+    public List<Branch> search (SpaceInvadersMachine root, int branches, int threads) {
+        // forking reads the root, so it happens here, the forks then run anywhere
+        List<Callable<Branch>> tasks = new ArrayList<>(branches);
+        for (int i = 0; i < branches; i++) {
+            int index = i;
+            SpaceInvadersMachine fork = root.fork();
+            tasks.add(() -> play(index, fork));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Branch> results = new ArrayList<>(branches);
+            for (Future<Branch> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the search", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A branch of the search failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays the inputs of a branch on the machine
+     */
+    public Branch play (int index, SpaceInvadersMachine machine) {
+        SplittableRandom random = new SplittableRandom(seed + index);
+        int inputs = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            if (frame % hold == 0) {
+                inputs = ACTIONS[random.nextInt(ACTIONS.length)];
+            }
+            machine.setInputs(inputs);
+            machine.runFrame();
+        }
+        return new Branch(index, machine.getScore(), machine.getShips());
+    }
+
+    public static void main (String[] args) throws IOException {
+        Path romDirectory = Paths.get("assets/invaders");
+        Path script = null;
+        long start = 400;
+        int branches = 256;
+        int frames = 600;
+        int hold = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--roms":
+                    romDirectory = Paths.get(value(args, ++i));
+                    break;
+                case "--input":
+                    script = Paths.get(value(args, ++i));
+                    break;
+                case "--start":
+                    start = Long.parseLong(value(args, ++i));
+                    break;
+                case "--branches":
+                    branches = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--frames":
+                    frames = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--hold":
+                    hold = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value(args, ++i));
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.err.println("Usage: ForkSearch [--roms dir] [--input script] [--start n] [--branches n]"
+                        + " [--frames n] [--hold n] [--threads n] [--seed n]");
+                    System.exit(2);
+            }
+        }
+
+        RomImage rom = RomFiles.load(romDirectory);
+        SpaceInvadersMachine root = new SpaceInvadersMachine(rom, null);
+        InputScript inputs = script != null ? InputScript.load(script) : null;
+        for (long frame = 0; frame < start; frame++) {
+            if (inputs != null) {
+                inputs.apply(frame, root);
+            } else {
+                root.setInput(Input.CREDIT, frame >= 120 && frame < 126);
+                root.setInput(Input.START_1P, frame >= 240 && frame < 246);
+            }
+            root.runFrame();
+        }
+
+        ForkSearch search = new ForkSearch(frames, hold, seed);
+        long searchStart = System.nanoTime();
+        List<Branch> results = search.search(root, branches, threads);
+        long nanos = System.nanoTime() - searchStart;
+
+        Branch best = results.get(0);
+        Branch worst = results.get(0);
+        long totalScore = 0;
+        for (Branch branch : results) {
+            if (branch.beats(best)) {
+                best = branch;
+            }
+            if (worst.beats(branch)) {
+                worst = branch;
+            }
+            totalScore += branch.score;
+        }
+        System.out.printf("%d branches of %d frames from frame %d on %d threads: %.1f ms, %.0f branches/s, %.0f fps%n",
+            branches, frames, start, threads, nanos / 1e6, branches * 1e9 / nanos, (double) branches * frames * 1e9 / nanos);
+        System.out.printf("score %d at the fork, best %d with %d ships (branch %d), mean %.1f, worst %d with %d ships%n",
+            root.getScore(), best.score, best.ships, best.index, (double) totalScore / branches, worst.score, worst.ships);
+
+        Branch replay = search.play(best.index, root.fork());
+        if (replay.score != best.score || replay.ships != best.ships) {
+            System.out.println("Replaying branch " + best.index + " scored " + replay.score + " with " + replay.ships
+                + " ships");
+            System.exit(1);
+        }
+    }
+
+    private static String value (String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+}
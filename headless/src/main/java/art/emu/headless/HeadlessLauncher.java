@@ -0,0 +1,168 @@
+package art.emu.headless;
+
+import art.emu.invaders.InputMovie;
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.jit.JitCompiler;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs the Space Invaders machine without libGDX, a window or a GL context, as fast as it goes, and reports frames
+ * per second and emulated MHz on exit.
+ * <p>
+ * Usage: HeadlessLauncher [--roms dir] [--frames n] [--input script] [--jit] [--load-state file]
+ * [--save-state file] [--movie file] [--record-movie file]
+ * <ul>
+ *     <li>--roms: directory holding invaders.h to invaders.e, default assets/invaders</li>
+ *     <li>--frames: frames to run, 0 runs until the process is stopped, default 3600 (one minute of game time) or all of
+ *     the movie</li>
+ *     <li>--input: {@link InputScript} to play</li>
+ *     <li>--jit: compile hot blocks, only faster once HotSpot has compiled them in turn, some 60000 frames in</li>
+ *     <li>--load-state: start from a saved state instead of power on, frames of the input script count from there</li>
+ *     <li>--save-state: save the state once the frames have run</li>
+ *     <li>--movie: play an {@link InputMovie} instead of a script, by default all of it, and stop with exit code 1 at
+ *     the first frame whose video RAM differs from the recording</li>
+ *     <li>--record-movie: record the inputs and video RAM hashes of the run to a movie</li>
+ * </ul>
+ */
+public class HeadlessLauncher {
+    private final SpaceInvadersMachine machine;
+    private final InputScript inputScript;
+    private final InputMovie movie;
+    private final InputMovie recording;
+
+    private volatile long frames;
+    private volatile long cycles;
+    private long startNanos;
+
+    private HeadlessLauncher (SpaceInvadersMachine machine, InputScript inputScript, InputMovie movie,
+        InputMovie recording) {
+        this.machine = machine;
+        this.inputScript = inputScript;
+        this.movie = movie;
+        this.recording = recording;
+    }
+
+    public static void main (String[] args) throws IOException {
+        Path romDirectory = Paths.get("assets/invaders");
+        long frameLimit = -1;
+        InputScript inputScript = InputScript.empty();
+        boolean jit = false;
+        Path loadState = null;
+        Path saveState = null;
+        InputMovie movie = null;
+        Path recordMovie = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--roms":
+                    romDirectory = Paths.get(value(args, ++i));
+                    break;
+                case "--frames":
+                    frameLimit = Long.parseLong(value(args, ++i));
+                    break;
+                case "--input":
+                    inputScript = InputScript.load(Paths.get(value(args, ++i)));
+                    break;
+                case "--jit":
+                    jit = true;
+                    break;
+                case "--load-state":
+                    loadState = Paths.get(value(args, ++i));
+                    break;
+                case "--save-state":
+                    saveState = Paths.get(value(args, ++i));
+                    break;
+                case "--movie":
+                    movie = readMovie(Paths.get(value(args, ++i)));
+                    break;
+                case "--record-movie":
+                    recordMovie = Paths.get(value(args, ++i));
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.err.println("Usage: HeadlessLauncher [--roms dir] [--frames n] [--input script] [--jit]"
+                        + " [--load-state file] [--save-state file] [--movie file] [--record-movie file]");
+                    System.exit(2);
+            }
+        }
+
+        SpaceInvadersMachine machine = new SpaceInvadersMachine(RomFiles.load(romDirectory),
+            jit ? new JitCompiler() : null);
+        if (loadState != null) {
+            SaveStateFile.read(loadState, machine);
+        }
+
+        if (frameLimit < 0) {
+            frameLimit = movie != null ? movie.getFrameCount() : 3600;
+        }
+        InputMovie recording = recordMovie != null ? new InputMovie(true) : null;
+
+        HeadlessLauncher launcher = new HeadlessLauncher(machine, inputScript, movie, recording);
+        // also report when stopped from outside, e.g. an unlimited run on a batch server
+        Runtime.getRuntime().addShutdownHook(new Thread(launcher::report, "report"));
+        launcher.run(frameLimit);
+        if (saveState != null) {
+            SaveStateFile.write(saveState, machine);
+        }
+        if (recording != null) {
+            Files.write(recordMovie, recording.toBytes());
+        }
+    }
+
+    private static InputMovie readMovie (Path file) throws IOException {
+        try {
+            return InputMovie.read(Files.readAllBytes(file));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException(file + " isn't a movie: " + e, e);
+        }
+    }
+
+    private static String value (String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private void run (long frameLimit) {
+        startNanos = System.nanoTime();
+        long cycles = 0;
+        for (long frame = 0; frameLimit == 0 || frame < frameLimit; frame++) {
+            if (movie == null) {
+                inputScript.apply(frame, machine);
+            } else if (frame < movie.getFrameCount()) {
+                machine.setInputs(movie.getInputs((int) frame));
+            } else {
+                break;
+            }
+            int inputs = machine.getInputs();
+            cycles += machine.runFrame();
+            this.cycles = cycles;
+            this.frames = frame + 1;
+
+            if (movie != null && movie.hasVramHashes()) {
+                int hash = machine.hashVram();
+                if (hash != movie.getVramHash((int) frame)) {
+                    System.err.printf("Replay diverged at frame %d: video RAM hash %08x, recorded %08x%n", frame, hash,
+                        movie.getVramHash((int) frame));
+                    System.exit(1);
+                }
+            }
+            if (recording != null) {
+                recording.record(inputs, machine.hashVram());
+            }
+        }
+    }
+
+    private void report () {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.printf("%d frames in %.1f ms, %.1f fps, %.1f emulated MHz%n", frames, nanos / 1e6,
+            frames * 1e9 / nanos, cycles * 1e3 / nanos);
+        System.out.println(machine.getBlockCache());
+    }
+}
@@ -0,0 +1,101 @@
+package art.emu.headless;
+
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.invaders.SpaceInvadersMachine.Input;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Input presses and releases keyed by frame, one per line as {@code <frame> <input> down|up}, e.g.
+ * {@code 60 CREDIT down}. Inputs are the names of {@link Input}, {@code #} starts a comment.
+ * Events are applied right before their frame runs
+ */
+public class InputScript {
+    private static final class Event {
+        final long frame;
+        final Input input;
+        final boolean pressed;
+
+        Event (long frame, Input input, boolean pressed) {
+            this.frame = frame;
+            this.input = input;
+            this.pressed = pressed;
+        }
+    }
+
+    private final List<Event> events;
+    private int next;
+
+    private InputScript (List<Event> events) {
+        this.events = events;
+    }
+
+    public static InputScript empty () {
+        return new InputScript(new ArrayList<>());
+    }
+
+    public static InputScript load (Path path) throws IOException {
+        List<Event> events = new ArrayList<>();
+        List<String> lines = Files.readAllLines(path);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = line.split("\\s+");
+            try {
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("expected <frame> <input> down|up");
+                }
+                long frame = Long.parseLong(parts[0]);
+                Input input = Input.valueOf(parts[1].toUpperCase(Locale.ROOT));
+                boolean pressed;
+                switch (parts[2].toLowerCase(Locale.ROOT)) {
+                    case "down":
+                        pressed = true;
+                        break;
+                    case "up":
+                        pressed = false;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("expected down or up, got " + parts[2]);
+                }
+                events.add(new Event(frame, input, pressed));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        // stable, so events of the same frame keep their order
+        events.sort(Comparator.comparingLong(event -> event.frame));
+        return new InputScript(events);
+    }
+
+    /**
+     * @return the same script from its first frame on, the events are shared
+     */
+    public InputScript copy () {
+        return new InputScript(events);
+    }
+
+    /**
+     * Applies the events of this frame and any earlier ones not applied yet, frames have to come in order
+     */
+    public void apply (long frame, SpaceInvadersMachine machine) {
+        while (next < events.size() && events.get(next).frame <= frame) {
+            Event event = events.get(next++);
+            machine.setInput(event.input, event.pressed);
+        }
+    }
+}
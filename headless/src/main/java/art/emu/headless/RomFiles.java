@@ -0,0 +1,35 @@
+package art.emu.headless;
+
+import art.emu.invaders.RomImage;
+import art.emu.invaders.SpaceInvadersMachine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the ROM files from a directory into a {@link RomImage}, once per process however many machines run it
+ */
+public final class RomFiles {
+    private RomFiles () {}
+
+    /**
+     * Reads and checks the ROM files, warns if they aren't the known dump
+     */
+    public static RomImage load (Path directory) throws IOException {
+        byte[][] files = new byte[SpaceInvadersMachine.ROM_FILES.length][];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = Files.readAllBytes(directory.resolve(SpaceInvadersMachine.ROM_FILES[i]));
+        }
+        RomImage rom;
+        try {
+            rom = RomImage.of(files);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(directory + ": " + e.getMessage(), e);
+        }
+        if (!rom.isKnownDump()) {
+            System.err.println("Warning: the ROM files in " + directory + " aren't the known Space Invaders dump");
+        }
+        return rom;
+    }
+}
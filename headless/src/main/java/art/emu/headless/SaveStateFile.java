@@ -0,0 +1,48 @@
+package art.emu.headless;
+
+import art.emu.invaders.SpaceInvadersMachine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saved machine states on disk, the bytes of {@link SpaceInvadersMachine#saveState(ByteBuffer)} as they are,
+ * moved through a {@link FileChannel} in one buffer
+ */
+public final class SaveStateFile {
+    private SaveStateFile () {}
+
+    public static void write (Path file, SpaceInvadersMachine machine) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SpaceInvadersMachine.STATE_SIZE);
+        machine.saveState(buffer);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static void read (Path file, SpaceInvadersMachine machine) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SpaceInvadersMachine.STATE_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != SpaceInvadersMachine.STATE_SIZE) {
+                throw new IOException(file + " is " + channel.size() + " bytes, a saved state is "
+                    + SpaceInvadersMachine.STATE_SIZE);
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading, a channel may return less than asked for
+            }
+        }
+        buffer.flip();
+        try {
+            machine.loadState(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -2,7 +2,12 @@ package art.emu.lwjgl3;
 
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
+import com.badlogic.gdx.files.FileHandle;
 import art.emu.Emulator;
+import art.emu.RewindBuffer;
+import art.emu.invaders.SpaceInvadersMachine;
+import art.emu.jit.JitCompiler;
+import art.emu.thread.EmulationThread;
 
 /** Launches the desktop (LWJGL3) application. */
 public class Lwjgl3Launcher {
@@ -12,7 +17,20 @@ public class Lwjgl3Launcher {
     }
 
     private static void createApplication() {
-        new Lwjgl3Application(new Emulator(), getDefaultConfiguration());
+        // -Dinvaders.jit=true compiles hot blocks, it only overtakes the block cache after some 60000 frames
+        boolean jit = Boolean.parseBoolean(System.getProperty("invaders.jit", "false"));
+        // -Dinvaders.thread=true runs the emulation on its own thread instead of in render()
+        boolean thread = Boolean.parseBoolean(System.getProperty("invaders.thread", "false"));
+        // -Dinvaders.rewind=megabytes for the frames backspace rewinds through, 0 turns it off, ignored with a thread
+        int rewindMegabytes = Integer.parseInt(System.getProperty("invaders.rewind", "16"));
+        RewindBuffer rewind = rewindMegabytes > 0 && !thread
+            ? new RewindBuffer(SpaceInvadersMachine.STATE_SIZE, 60, rewindMegabytes * 1024L * 1024L) : null;
+        // -Dinvaders.runAhead=frames shows the machine that many frames ahead to hide input lag, ignored with a thread
+        int runAhead = Integer.parseInt(System.getProperty("invaders.runAhead", "0"));
+        // -Dinvaders.record=file records the inputs of the session to replay with the headless launcher
+        String record = System.getProperty("invaders.record");
+        new Lwjgl3Application(new Emulator(jit ? new JitCompiler() : null, thread ? new EmulationThread() : null,
+            rewind, runAhead, record != null ? new FileHandle(record) : null), getDefaultConfiguration());
     }
 
     private static Lwjgl3ApplicationConfiguration getDefaultConfiguration() {